@@ -2,9 +2,9 @@ package org.example.controller;
 
 import org.example.dto.BonusStatusDTO;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.service.BonusService;
+import org.example.service.IdempotencyService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -20,6 +20,9 @@ public class BonusController {
     @Autowired
     private UtilisateurRepository utilisateurRepo;
 
+    @Autowired
+    private IdempotencyService idempotency;
+
     @GetMapping("/status")
     public ResponseEntity<BonusStatusDTO> status(Authentication authentication) {
         String email = authentication.getName();
@@ -28,13 +31,18 @@ public class BonusController {
     }
 
     @PostMapping("/claim")
-    public ResponseEntity<?> claim(Authentication authentication) {
+    public ResponseEntity<?> claim(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                   Authentication authentication) {
+        return idempotency.executeInTransaction(authentication.getName() + ":bonus", idempotencyKey, null, () -> reclamer(authentication));
+    }
+
+    private ResponseEntity<?> reclamer(Authentication authentication) {
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
         try {
-            Wallet w = bonusService.claimDailyBonus(u);
+            long solde = bonusService.claimDailyBonus(u);
             BonusStatusDTO dto = bonusService.getStatus(u);
-            dto.setSolde(w.getSolde()); // on renvoie aussi le solde mis à jour
+            dto.setSolde(solde); // on renvoie aussi le solde mis à jour
             return ResponseEntity.ok(dto);
         } catch (IllegalStateException e) {
             return ResponseEntity.badRequest().body(java.util.Map.of("error", e.getMessage()));
@@ -5,16 +5,24 @@ import org.example.dto.ChatEvent;
 import org.example.dto.ChatInputMessage;
 import org.example.dto.ChatMessage;
 import org.example.model.Utilisateur;
+import org.example.service.ChatBroadcaster;
+import org.example.service.ChatModerationService;
 import org.example.service.ChatService;
+import org.example.service.NotificationDispatcher;
 import org.example.service.UtilisateurService;
+import org.example.service.bus.NotificationBus;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.List;
 import java.util.Map;
@@ -30,13 +38,50 @@ public class ChatController {
     private UtilisateurService utilisateurService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private NotificationDispatcher notifications;
+
+    @Autowired
+    private NotificationBus bus;
+
+    @Autowired
+    private ChatModerationService moderation;
+
+    @Autowired
+    private ChatBroadcaster broadcaster;
+
+    private static final byte[] EMPTY_JSON = "[]".getBytes(StandardCharsets.UTF_8);
+
+    // chaque nœud relaie les événements du chat à ses propres abonnés STOMP
+    @PostConstruct
+    void abonnerBus() {
+        bus.subscribe(NotificationBus.CHAT, ChatEvent.class, broadcaster::send);
+    }
 
     // ---------- REST : historique ----------
 
+    /**
+     * Historique du chat, servi depuis la mémoire.
+     * - If-None-Match égal à l'ETag courant : 304, rien n'a changé ;
+     * - since=id : seulement les messages plus récents, sauf si des messages ont disparu depuis
+     *   (buffer dépassé, suppression, vidage) : liste complète avec X-Chat-Reset: true.
+     */
     @GetMapping
-    public List<ChatMessage> list() {
-        return chatService.getAll();
+    public ResponseEntity<?> list(@RequestParam(required = false) Long since,
+                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ChatService.Snapshot snap = chatService.snapshot();
+        if (ifNoneMatch != null && (ifNoneMatch.contains(snap.etag()) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snap.etag()).build();
+        }
+        if (since != null) {
+            List<ChatMessage> nouveaux = chatService.since(since);
+            if (nouveaux != null) {
+                ResponseEntity.BodyBuilder ok = ResponseEntity.ok().eTag(snap.etag()).contentType(MediaType.APPLICATION_JSON);
+                return nouveaux.isEmpty() ? ok.body(EMPTY_JSON) : ok.body(nouveaux);
+            }
+            return ResponseEntity.ok().eTag(snap.etag()).header("X-Chat-Reset", "true")
+                    .contentType(MediaType.APPLICATION_JSON).body(snap.json());
+        }
+        return ResponseEntity.ok().eTag(snap.etag()).contentType(MediaType.APPLICATION_JSON).body(snap.json());
     }
 
     @PostMapping
@@ -65,11 +110,41 @@ public class ChatController {
     @DeleteMapping("/clear")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> clear() {
-        chatService.clear();
-        broadcastClear(); // 🔥 push WebSocket
+        long upTo = chatService.clear();
+        broadcastClear(upTo); // 🔥 push WebSocket
         return ResponseEntity.noContent().build();
     }
 
+    // ---------- Admin : mots filtrés ----------
+
+    @GetMapping("/moderation")
+    @PreAuthorize("hasRole('ADMIN')")
+    public List<String> listerMots() {
+        return moderation.lister();
+    }
+
+    @PostMapping("/moderation")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> ajouterMot(@RequestBody Map<String, String> body) {
+        try {
+            moderation.ajouter(body.get("mot"));
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/moderation/{mot}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> retirerMot(@PathVariable String mot) {
+        try {
+            moderation.retirer(mot);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ---------- STOMP : envoi via /app/chat.send ----------
 
     @MessageMapping("/chat.send")
@@ -108,19 +183,20 @@ public class ChatController {
         ChatEvent event = new ChatEvent();
         event.setType(ChatEvent.Type.MESSAGE);
         event.setMessage(saved);
-        messagingTemplate.convertAndSend("/topic/chat", event);
+        notifications.afterCommit(() -> bus.publish(NotificationBus.CHAT, event));
     }
 
     private void broadcastDelete(Long id) {
         ChatEvent event = new ChatEvent();
         event.setType(ChatEvent.Type.DELETE);
         event.setId(id);
-        messagingTemplate.convertAndSend("/topic/chat", event);
+        notifications.afterCommit(() -> bus.publish(NotificationBus.CHAT, event));
     }
 
-    private void broadcastClear() {
+    private void broadcastClear(long upTo) {
         ChatEvent event = new ChatEvent();
         event.setType(ChatEvent.Type.CLEAR);
-        messagingTemplate.convertAndSend("/topic/chat", event);
+        event.setId(upTo);
+        notifications.afterCommit(() -> bus.publish(NotificationBus.CHAT, event));
     }
 }
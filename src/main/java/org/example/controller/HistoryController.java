@@ -1,15 +1,25 @@
 // src/main/java/org/example/controller/HistoryController.java
 package org.example.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.model.Utilisateur;
 import org.example.repo.UtilisateurRepository;
+import org.example.service.GameHistoryExportService;
 import org.example.service.GameHistoryService;
+import org.example.service.GameStatsService;
 import org.example.service.GameHistoryService.HistoryRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +33,15 @@ public class HistoryController {
     @Autowired
     private UtilisateurRepository utilisateurRepo;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GameStatsService statsService;
+
+    @Autowired
+    private GameHistoryExportService exportService;
+
     @GetMapping("/me")
     public ResponseEntity<?> myHistory(
             @RequestParam(required = false) String game,
@@ -52,6 +71,88 @@ public class HistoryController {
         return ResponseEntity.ok(Map.of("items", list));
     }
 
+    /** Statistiques par jeu (parties, misé, gagné, net, RTP, plus gros gain, série), servies depuis la mémoire. */
+    @GetMapping("/me/stats")
+    public ResponseEntity<?> myStats(Authentication authentication) {
+        Utilisateur u = utilisateurRepo.findByEmail(authentication.getName()).orElseThrow();
+        return ResponseEntity.ok(statsService.statsFor(u.getId()));
+    }
+
+    /**
+     * Historique complet, page par page (keyset sur created_at, id).
+     * cursor : valeur nextCursor de la page précédente (opaque) ; absent pour la première page.
+     */
+    @GetMapping("/me/page")
+    public ResponseEntity<?> myHistoryPage(
+            @RequestParam(required = false) String game,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "50") Integer size,
+            Authentication authentication) {
+
+        Utilisateur u = utilisateurRepo.findByEmail(authentication.getName()).orElseThrow();
+
+        GameHistoryService.Cursor after;
+        try {
+            after = historyService.parseCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        String g = (game == null || game.isBlank()) ? null : game.trim();
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+                historyService.writePage(u.getId(), g, after, size, gen);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /** Export de tout l'historique, streamé depuis un curseur JDBC (format=ndjson|csv). */
+    @GetMapping("/me/export")
+    public ResponseEntity<?> exportMyHistory(
+            @RequestParam(required = false, defaultValue = GameHistoryExportService.NDJSON) String format,
+            Authentication authentication) {
+        Utilisateur u = utilisateurRepo.findByEmail(authentication.getName()).orElseThrow();
+        return export(u.getId(), format);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/admin/{userId}/export")
+    public ResponseEntity<?> exportUserHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false, defaultValue = GameHistoryExportService.NDJSON) String format) {
+        if (!utilisateurRepo.existsById(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return export(userId, format);
+    }
+
+    private ResponseEntity<?> export(Long userId, String format) {
+        String f = format.trim().toLowerCase();
+        if (!GameHistoryExportService.isSupported(f)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Format inconnu (ndjson ou csv)"));
+        }
+        MediaType type = GameHistoryExportService.CSV.equals(f)
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+        if (!exportService.reserver()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", "Trop d'exports en cours, réessayez dans un instant"));
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                exportService.exporter(userId, f, out);
+            } finally {
+                exportService.liberer();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"historique-" + userId + "." + f + "\"")
+                .body(body);
+    }
+
     @DeleteMapping("/me")
     public ResponseEntity<?> deleteMyHistory(Authentication authentication) {
         Utilisateur u = utilisateurRepo.findByEmail(authentication.getName()).orElseThrow();
@@ -2,9 +2,9 @@ package org.example.controller;
 
 import org.example.dto.*;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.service.GameHistoryService;
+import org.example.service.IdempotencyService;
 import org.example.service.MinesService;
 import org.example.service.WalletService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,30 +23,36 @@ public class MinesController {
     @Autowired private WalletService walletService;
     @Autowired private MinesService minesService;
     @Autowired private GameHistoryService historyService;
+    @Autowired private IdempotencyService idempotency;
 
     private static final int GRID = 25;
 
     // ==================== DÉMARRER PARTIE ====================
     @PostMapping("/start")
-    @Transactional
-    public ResponseEntity<?> start(@RequestBody MinesStartRequest req, Authentication auth) {
+    public ResponseEntity<?> start(@RequestBody MinesStartRequest req,
+                                   @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                   Authentication auth) {
+        return idempotency.executeInTransaction(auth.getName() + ":mines-start", idempotencyKey, req, () -> demarrer(req, auth));
+    }
+
+    private ResponseEntity<?> demarrer(MinesStartRequest req, Authentication auth) {
         if (req == null || req.montant <= 0)
             return ResponseEntity.badRequest().body(Map.of("error", "Montant invalide"));
 
         Utilisateur u = utilisateurRepo.findByEmail(auth.getName()).orElseThrow();
 
+        long solde;
         try {
-            walletService.debiter(u, req.montant);
+            solde = walletService.debiterSolde(u.getId(), req.montant);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
         }
 
         var round = minesService.start(u, req.montant, req.mines);
-        Wallet w = walletService.getWalletParUtilisateur(u);
 
         double nextMult = minesService.multiplierFor(round.mines, 1);
         MinesStartResponse resp = new MinesStartResponse(
-                round.id, GRID, round.mines, GRID - round.mines, 0, nextMult, w.getSolde());
+                round.id, GRID, round.mines, GRID - round.mines, 0, nextMult, solde);
         return ResponseEntity.ok(resp);
     }
 
@@ -94,8 +100,13 @@ public class MinesController {
 
     // ==================== CASHOUT ====================
     @PostMapping("/cashout")
-    @Transactional
-    public ResponseEntity<?> cashout(@RequestBody MinesCashoutRequest req, Authentication auth) {
+    public ResponseEntity<?> cashout(@RequestBody MinesCashoutRequest req,
+                                     @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                     Authentication auth) {
+        return idempotency.executeInTransaction(auth.getName() + ":mines-cashout", idempotencyKey, req, () -> encaisser(req, auth));
+    }
+
+    private ResponseEntity<?> encaisser(MinesCashoutRequest req, Authentication auth) {
         Utilisateur u = utilisateurRepo.findByEmail(auth.getName()).orElseThrow();
 
         try {
@@ -107,7 +118,9 @@ public class MinesController {
             long mise = active.mise;
 
             var cr = minesService.cashout(u, req.sessionId);
-            if (cr.payout > 0) walletService.crediter(u, cr.payout);
+            long solde = (cr.payout > 0)
+                    ? walletService.crediterSolde(u.getId(), cr.payout)
+                    : walletService.lireSolde(u.getId());
 
             // 🧾 Enregistre l’historique (outcome clair)
             String outcome = String.format(
@@ -124,9 +137,8 @@ public class MinesController {
                     (int) Math.floor(cr.multiplier)
             );
 
-            Wallet w = walletService.getWalletParUtilisateur(u);
             MinesCashoutResponse resp = new MinesCashoutResponse(
-                    true, cr.safeCount, cr.multiplier, cr.payout, w.getSolde(), cr.bombs);
+                    true, cr.safeCount, cr.multiplier, cr.payout, solde, cr.bombs);
             return ResponseEntity.ok(resp);
         } catch (Exception ex) {
             return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
@@ -4,16 +4,15 @@ package org.example.controller;
 import org.example.dto.CoinFlipRequest;
 import org.example.dto.CoinFlipResponse;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.service.CoinFlipService;
 import org.example.service.GameHistoryService;
+import org.example.service.IdempotencyService;
 import org.example.service.WalletService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -26,24 +25,29 @@ public class PilefaceController {
     private final UtilisateurRepository utilisateurRepo;
     private final CoinFlipService coinFlipService;
     private final String adminKey;
-
-    private final GameHistoryService historyService;
+    private final IdempotencyService idempotency;
 
     public PilefaceController(WalletService walletService,
                               UtilisateurRepository utilisateurRepo,
                               CoinFlipService coinFlipService,
-                              GameHistoryService historyService,
+                              IdempotencyService idempotency,
                               @Value("${app.admin.key:changeme}") String adminKey) {
         this.walletService = walletService;
         this.utilisateurRepo = utilisateurRepo;
         this.coinFlipService = coinFlipService;
-        this.historyService = historyService;
+        this.idempotency = idempotency;
         this.adminKey = adminKey;
     }
 
     @PostMapping("/coinflip")
-    @Transactional
-    public ResponseEntity<?> jouerCoinFlip(@RequestBody CoinFlipRequest req, Authentication authentication) {
+    public ResponseEntity<?> jouerCoinFlip(@RequestBody CoinFlipRequest req,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                           Authentication authentication) {
+        return idempotency.execute(authentication.getName() + ":coinflip", idempotencyKey, req,
+                () -> jouer(req, authentication));
+    }
+
+    private ResponseEntity<?> jouer(CoinFlipRequest req, Authentication authentication) {
         if (req == null || req.choix == null || (!req.choix.equals("pile") && !req.choix.equals("face"))) {
             return ResponseEntity.badRequest().body(Map.of("error", "Choix invalide (pile|face)"));
         }
@@ -54,26 +58,23 @@ public class PilefaceController {
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
 
-        try {
-            walletService.debiter(u, req.montant);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
-        }
-
         String outcome = coinFlipService.tirer();
         boolean win = outcome.equals(req.choix);
 
         long montantGagne = 0L;
         if (win) {
             montantGagne = req.montant * 2L;
-            walletService.crediter(u, montantGagne);
         }
 
-        historyService.record(u, "coinflip", "choice=" + req.choix + ",outcome=" + outcome, req.montant, montantGagne, win ? 2 : 0);
-
-        Wallet w = walletService.getWalletParUtilisateur(u);
+        WalletService.SettleResult r;
+        try {
+            r = walletService.settle(u.getId(), req.montant, montantGagne,
+                    new GameHistoryService.BetOutcome("coinflip", "choice=" + req.choix + ",outcome=" + outcome, win ? 2 : 0));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
+        }
 
-        CoinFlipResponse resp = new CoinFlipResponse(outcome, win, req.montant, montantGagne, w.getSolde());
+        CoinFlipResponse resp = new CoinFlipResponse(outcome, win, req.montant, montantGagne, r.solde);
         return ResponseEntity.ok(resp);
     }
 
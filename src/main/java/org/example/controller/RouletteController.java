@@ -4,8 +4,8 @@ package org.example.controller;
 import org.example.dto.RouletteBetRequest;
 import org.example.dto.RouletteBetResponse;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
+import org.example.service.IdempotencyService;
 import org.example.service.RouletteService;
 import org.example.service.WalletService;
 import org.example.service.GameHistoryService;
@@ -13,7 +13,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -29,7 +28,7 @@ public class RouletteController {
     @Autowired
     private RouletteService rouletteService;
     @Autowired
-    private GameHistoryService historyService;
+    private IdempotencyService idempotency;
 
     @PostMapping("/roulette/probabilities")
     @PreAuthorize("hasRole('ADMIN')")
@@ -53,8 +52,14 @@ public class RouletteController {
     }
 
     @PostMapping("/roulette")
-    @Transactional
-    public ResponseEntity<?> jouerRoulette(@RequestBody RouletteBetRequest req, Authentication authentication) {
+    public ResponseEntity<?> jouerRoulette(@RequestBody RouletteBetRequest req,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                           Authentication authentication) {
+        return idempotency.execute(authentication.getName() + ":roulette", idempotencyKey, req,
+                () -> jouer(req, authentication));
+    }
+
+    private ResponseEntity<?> jouer(RouletteBetRequest req, Authentication authentication) {
         if (req == null || req.betType == null || req.betValue == null) {
             return ResponseEntity.badRequest().body(Map.of("error", "Paramètres invalides"));
         }
@@ -63,12 +68,6 @@ public class RouletteController {
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
 
-        try {
-            walletService.debiter(u, req.montant);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
-        }
-
         int result = rouletteService.tirerNumero();
         String color = rouletteService.couleurPour(result);
 
@@ -78,14 +77,18 @@ public class RouletteController {
         if (win) {
             long m = rouletteService.payoutMultiplier(req.betType);
             montantGagne = req.montant * m;
-            walletService.crediter(u, montantGagne);
             mult = (int) m;
         }
 
-        historyService.record(u, "roulette", "number=" + result + ",color=" + color, req.montant, montantGagne, mult);
+        WalletService.SettleResult r;
+        try {
+            r = walletService.settle(u.getId(), req.montant, montantGagne,
+                    new GameHistoryService.BetOutcome("roulette", "number=" + result + ",color=" + color, mult));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
+        }
 
-        Wallet w = walletService.getWalletParUtilisateur(u);
-        RouletteBetResponse resp = new RouletteBetResponse(result, color, win, req.montant, montantGagne, w.getSolde());
+        RouletteBetResponse resp = new RouletteBetResponse(result, color, win, req.montant, montantGagne, r.solde);
         return ResponseEntity.ok(resp);
     }
 }
@@ -5,16 +5,15 @@ import org.example.dto.SlotConfigResponse;
 import org.example.dto.SlotPlayRequest;
 import org.example.dto.SlotPlayResponse;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.service.GameHistoryService;
+import org.example.service.IdempotencyService;
 import org.example.service.SlotService;
 import org.example.service.WalletService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.LinkedHashMap;
@@ -32,11 +31,17 @@ public class SlotController {
     @Autowired
     private SlotService slotService;
     @Autowired
-    private GameHistoryService historyService;
+    private IdempotencyService idempotency;
 
     @PostMapping("/play")
-    @Transactional
-    public ResponseEntity<?> play(@RequestBody SlotPlayRequest req, Authentication authentication) {
+    public ResponseEntity<?> play(@RequestBody SlotPlayRequest req,
+                                  @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                  Authentication authentication) {
+        return idempotency.execute(authentication.getName() + ":slots", idempotencyKey, req,
+                () -> jouer(req, authentication));
+    }
+
+    private ResponseEntity<?> jouer(SlotPlayRequest req, Authentication authentication) {
         if (req == null || req.montant <= 0) {
             return ResponseEntity.badRequest().body(Map.of("error", "Montant invalide"));
         }
@@ -48,30 +53,23 @@ public class SlotController {
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
 
-        try {
-            walletService.debiter(u, req.montant);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
-        }
-
         List<String> reels = slotService.spinForReels(requestedReels);
         long payout = slotService.computePayout(reels, req.montant);
-        boolean win = payout > 0L;
-        if (win) walletService.crediter(u, payout);
-
         int mult = (payout > 0 && req.montant > 0) ? (int) (payout / req.montant) : 0;
 
-        historyService.record(
-                u,
-                "slots",
-                String.join(",", reels) + (requestedReels != null ? ("|r:" + requestedReels) : ""),
-                req.montant,
-                payout,
-                mult
-        );
+        // débit + gain + historique en une seule opération
+        WalletService.SettleResult r;
+        try {
+            r = walletService.settle(u.getId(), req.montant, payout, new GameHistoryService.BetOutcome(
+                    "slots",
+                    String.join(",", reels) + (requestedReels != null ? ("|r:" + requestedReels) : ""),
+                    mult
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
+        }
 
-        Wallet w = walletService.getWalletParUtilisateur(u);
-        SlotPlayResponse resp = new SlotPlayResponse(reels, req.montant, payout, win, w.getSolde());
+        SlotPlayResponse resp = new SlotPlayResponse(reels, req.montant, payout, r.win(), r.solde);
         return ResponseEntity.ok(resp);
     }
 
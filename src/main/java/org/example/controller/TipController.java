@@ -1,32 +1,27 @@
 package org.example.controller;
 
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
-import org.example.model.TipDailyAggregate;
 import org.example.repo.UtilisateurRepository;
-import org.example.repo.WalletRepository;
-import org.example.repo.TipDailyAggregateRepository;
 
-import org.example.service.WalletSseService;
+import org.example.service.IdempotencyService;
+import org.example.service.TipQuotaService;
+import org.example.service.WalletService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDate;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/tip")
 public class TipController {
 
-    private static final long DAILY_LIMIT = 10_000;
-
     @Autowired private UtilisateurRepository utilisateurRepo;
-    @Autowired private WalletRepository walletRepo;
-    @Autowired private TipDailyAggregateRepository tipRepo;
-    @Autowired private WalletSseService walletSseService; // ➕ AJOUT
+    @Autowired private TipQuotaService tipQuota;
+    @Autowired private WalletService walletService;
+    @Autowired private IdempotencyService idempotency;
 
     /** Retourne combien un utilisateur peut encore recevoir aujourd’hui */
     @GetMapping("/max-receivable")
@@ -36,10 +31,7 @@ public class TipController {
         if (u == null)
             return ResponseEntity.badRequest().body(Map.of("error", "Utilisateur introuvable"));
 
-        TipDailyAggregate agg = tipRepo.findByUtilisateurIdAndDate(u.getId(), LocalDate.now())
-                .orElse(new TipDailyAggregate(u.getId(), LocalDate.now(), 0L));
-
-        long remaining = Math.max(0, DAILY_LIMIT - agg.getTotalReceived());
+        long remaining = tipQuota.restant(u.getId());
 
         return ResponseEntity.ok(Map.of("maxReceivable", remaining));
     }
@@ -47,12 +39,18 @@ public class TipController {
 
     /** Envoi d’un tip */
     @PostMapping
-    @Transactional
-    public ResponseEntity<?> tip(@RequestBody Map<String, Object> body, Authentication auth) {
+    public ResponseEntity<?> tip(@RequestBody Map<String, Object> body,
+                                 @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                 Authentication auth) {
 
         if (auth == null)
             return ResponseEntity.status(401).body(Map.of("error", "Non connecté"));
 
+        return idempotency.executeInTransaction(auth.getName() + ":tip", idempotencyKey, body, () -> envoyerTip(body, auth));
+    }
+
+    private ResponseEntity<?> envoyerTip(Map<String, Object> body, Authentication auth) {
+
         String emailDonneur = auth.getName();
         String pseudoReceveur = (String) body.get("pseudo");
         int montant = ((Number) body.get("montant")).intValue();
@@ -70,40 +68,39 @@ public class TipController {
         if (donneur.getId().equals(receveur.getId()))
             return ResponseEntity.badRequest().body(Map.of("error", "Impossible de s’auto-tipper"));
 
-        Wallet wDonneur = walletRepo.findByUtilisateur(donneur).orElse(null);
-        Wallet wReceveur = walletRepo.findByUtilisateur(receveur).orElse(null);
-
-        if (wDonneur == null || wReceveur == null)
-            return ResponseEntity.badRequest().body(Map.of("error", "Erreur portefeuille"));
+        // Réservation du quota journée (mémoire, CAS)
+        TipQuotaService.Reservation reservation = tipQuota.reserver(receveur.getId(), montant);
+        if (reservation == null)
+            return quotaAtteint(receveur.getId());
 
-        if (wDonneur.getSolde() < montant)
+        // plafond vérifié en base (fait foi entre nœuds)
+        if (!tipQuota.confirmer(reservation)) {
+            tipQuota.liberer(reservation);
+            return ResponseEntity.badRequest().body(Map.of("error", "Cet utilisateur a atteint la limite journalière"));
+        }
+
+        // appliquer la transaction : un seul statement, verrous ordonnés
+        WalletService.Transfert resultat;
+        try {
+            resultat = walletService.transferer(donneur.getId(), receveur.getId(), montant);
+        } catch (RuntimeException e) {
+            tipQuota.liberer(reservation);
+            throw e;
+        }
+        if (resultat != WalletService.Transfert.OK) {
+            tipQuota.annuler(reservation);
+            if (resultat == WalletService.Transfert.DESTINATAIRE_ABSENT)
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Wallet du destinataire introuvable"));
             return ResponseEntity.badRequest().body(Map.of("error", "Solde insuffisant"));
+        }
 
-        // Vérification du quota journée
-        TipDailyAggregate agg = tipRepo.findByUtilisateurIdAndDate(receveur.getId(), LocalDate.now())
-                .orElse(new TipDailyAggregate(receveur.getId(), LocalDate.now(), 0L));
-
-        long remaining = DAILY_LIMIT - agg.getTotalReceived();
+        return ResponseEntity.ok(Map.of("success", "Tip envoyé à " + pseudoReceveur));
+    }
 
+    private ResponseEntity<?> quotaAtteint(Long receveurId) {
+        long remaining = tipQuota.restant(receveurId);
         if (remaining <= 0)
             return ResponseEntity.badRequest().body(Map.of("error", "Cet utilisateur a atteint la limite journalière"));
-
-        if (montant > remaining)
-            return ResponseEntity.badRequest().body(Map.of("error", "Ce joueur ne peut recevoir que " + remaining + " crédits aujourd’hui"));
-
-        // appliquer la transaction
-        wDonneur.setSolde(wDonneur.getSolde() - montant);
-        wReceveur.setSolde(wReceveur.getSolde() + montant);
-        walletRepo.save(wDonneur);
-        walletRepo.save(wReceveur);
-
-        // mise à jour aggregate
-        agg.setTotalReceived(agg.getTotalReceived() + montant);
-        tipRepo.save(agg);
-
-        walletSseService.sendBalanceUpdate(donneur.getEmail(), wDonneur.getSolde());
-        walletSseService.sendBalanceUpdate(receveur.getEmail(), wReceveur.getSolde());
-
-        return ResponseEntity.ok(Map.of("success", "Tip envoyé à " + pseudoReceveur));
+        return ResponseEntity.badRequest().body(Map.of("error", "Ce joueur ne peut recevoir que " + remaining + " crédits aujourd’hui"));
     }
 }
@@ -1,8 +1,8 @@
 package org.example.controller;
 
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
+import org.example.service.IdempotencyService;
 import org.example.service.WalletService;
 import org.example.service.WalletSseService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,46 +24,72 @@ public class WalletController {
     private UtilisateurRepository utilisateurRepo;
     @Autowired
     private WalletSseService walletSseService;
+    @Autowired
+    private IdempotencyService idempotency;
 
-    // obtenir solde (utilisateur connecté)
+    // obtenir le wallet (utilisateur connecté)
     @GetMapping("/me")
-    public ResponseEntity<?> solde(Authentication authentication){
+    public ResponseEntity<?> wallet(Authentication authentication){
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
-        Wallet w = walletService.getWalletParUtilisateur(u);
-        return ResponseEntity.ok(w);
+        return ResponseEntity.ok(walletService.getWalletParUtilisateur(u));
     }
 
-    @PostMapping("/credit")
-    public ResponseEntity<?> crediter(@RequestBody Map<String, Long> body, Authentication authentication){
-        long montant = body.getOrDefault("montant", 0L);
+    // solde seul (utilisateur connecté) — servi par le cache de WalletService, pour l'affichage
+    @GetMapping("/me/solde")
+    public ResponseEntity<?> solde(Authentication authentication){
         String email = authentication.getName();
         Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
-        Wallet w = walletService.crediter(u, montant);
-        return ResponseEntity.ok(w);
+        return ResponseEntity.ok(Map.of("solde", walletService.getSolde(u.getId())));
+    }
+
+    @PostMapping("/credit")
+    public ResponseEntity<?> crediter(@RequestBody Map<String, Long> body,
+                                      @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                      Authentication authentication){
+        return idempotency.execute(authentication.getName() + ":credit", idempotencyKey, body, () -> {
+            long montant = body.getOrDefault("montant", 0L);
+            String email = authentication.getName();
+            Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
+            try {
+                walletService.crediterSolde(u.getId(), montant);
+                // même réponse qu'avant (entité Wallet), relue après la mutation atomique
+                return ResponseEntity.ok(walletService.getWalletParUtilisateur(u));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        });
     }
 
     @PostMapping("/debit")
-    public ResponseEntity<?> debiter(@RequestBody Map<String, Long> body, Authentication authentication){
-        long montant = body.getOrDefault("montant", 0L);
-        String email = authentication.getName();
-        Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
-        try {
-            Wallet w = walletService.debiter(u, montant);
-            return ResponseEntity.ok(w);
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
-        }
+    public ResponseEntity<?> debiter(@RequestBody Map<String, Long> body,
+                                     @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                     Authentication authentication){
+        return idempotency.execute(authentication.getName() + ":debit", idempotencyKey, body, () -> {
+            long montant = body.getOrDefault("montant", 0L);
+            String email = authentication.getName();
+            Utilisateur u = utilisateurRepo.findByEmail(email).orElseThrow();
+            try {
+                walletService.debiterSolde(u.getId(), montant);
+                return ResponseEntity.ok(walletService.getWalletParUtilisateur(u));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        });
     }
 
     // SSE stream pour le wallet de l'utilisateur (token peut être passé en header ou en query param)
     @GetMapping("/stream")
-    public SseEmitter stream(Authentication authentication) {
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                             Authentication authentication) {
         if (authentication == null || !authentication.isAuthenticated()) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Non authentifié");
         }
         String email = authentication.getName();
-        return walletSseService.register(email);
+        // reprise : événements manqués rejoués depuis la mémoire, sinon un seul instantané (cache)
+        return walletSseService.register(email, lastEventId, () -> utilisateurRepo.findByEmail(email)
+                .map(u -> walletService.getSolde(u.getId()))
+                .orElse(null));
     }
 
     @DeleteMapping("/me")
@@ -4,6 +4,8 @@ package org.example.dto;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 @Getter
 @Setter
 public class ChatEvent {
@@ -11,10 +13,12 @@ public class ChatEvent {
     public enum Type {
         MESSAGE, // nouveau message
         DELETE,  // suppression d'un message
-        CLEAR    // vidage complet
+        CLEAR,   // vidage complet
+        BATCH    // plusieurs nouveaux messages (mode app.chat.batch.enabled)
     }
 
     private Type type;
     private ChatMessage message; // rempli pour MESSAGE
-    private Long id;             // rempli pour DELETE
+    private Long id;             // rempli pour DELETE (et CLEAR : dernier id effacé)
+    private List<ChatMessage> messages; // rempli pour BATCH, du plus ancien au plus récent
 }
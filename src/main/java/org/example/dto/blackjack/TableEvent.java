@@ -1,12 +1,16 @@
 package org.example.dto.blackjack;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class TableEvent {
     private String type;
     private Object payload;
@@ -0,0 +1,25 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/** Mot filtré dans le chat (liste gérée par les admins, cf. ChatModerationService). */
+@Entity
+@Table(name = "chat_banned_word")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ChatBannedWord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // en minuscules
+    @Column(nullable = false, unique = true, length = 50)
+    private String mot;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
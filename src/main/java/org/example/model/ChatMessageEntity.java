@@ -0,0 +1,30 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Message du chat, une ligne par message (append-only).
+ * La lecture se fait depuis le buffer mémoire de ChatService ; la table ne sert qu'à le reconstruire au démarrage.
+ */
+@Entity
+@Table(name = "chat_message")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ChatMessageEntity {
+    // identifiant attribué par ChatService (ms * 1024 + slot du nœud), pas de séquence par ligne
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private String pseudo;
+
+    @Column(nullable = false)
+    private String contenu;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -3,9 +3,14 @@ package org.example.model;
 
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 @Entity
-@Table(name = "game_history")
+@Table(name = "game_history",
+        indexes = {
+                @Index(name = "gh_user_created_idx", columnList = "utilisateur_id, created_at, id"),
+                @Index(name = "gh_user_game_created_idx", columnList = "utilisateur_id, game, created_at, id")
+        })
 public class GameHistory {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -29,6 +34,7 @@ public class GameHistory {
 
     private Integer multiplier;
 
+    // UTC
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -36,7 +42,7 @@ public class GameHistory {
 
     @PrePersist
     public void prePersist() {
-        if (createdAt == null) createdAt = LocalDateTime.now();
+        if (createdAt == null) createdAt = LocalDateTime.now(ZoneOffset.UTC);
     }
 
     public Long getId() {
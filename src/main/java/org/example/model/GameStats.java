@@ -0,0 +1,47 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Statistiques cumulées d'un utilisateur sur un jeu, maintenues au fil des paris
+ * (cf. GameStatsService) : pas de recalcul sur l'historique.
+ */
+@Entity
+@Table(name = "game_stats",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"utilisateur_id", "game"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class GameStats {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "utilisateur_id", nullable = false)
+    private Long utilisateurId;
+
+    @Column(nullable = false, length = 80)
+    private String game;
+
+    @Column(nullable = false)
+    private long parties;
+
+    @Column(name = "total_joue", nullable = false)
+    private long totalJoue;
+
+    @Column(name = "total_gagne", nullable = false)
+    private long totalGagne;
+
+    @Column(name = "plus_gros_gain", nullable = false)
+    private long plusGrosGain;
+
+    // > 0 : victoires consécutives, < 0 : défaites consécutives
+    @Column(nullable = false)
+    private long serie;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -11,14 +11,15 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "tip_daily_aggregate")
+@Table(name = "tip_daily_aggregate",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"utilisateur_id", "date"}))
 public class TipDailyAggregate {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Column(name = "utilisateur_id", nullable = false)
     private Long utilisateurId;
 
     @Column(nullable = false)
@@ -18,10 +18,15 @@ public class Wallet {
 
 
     @OneToOne(optional = false)
-    @JoinColumn(name = "utilisateur_id", nullable = false)
+    @JoinColumn(name = "utilisateur_id", nullable = false, unique = true)
     private Utilisateur utilisateur;
 
     @Column(nullable = false)
     private Long solde = 0L; // crédits en entier
 
+    // incrémentée à chaque mutation atomique (ordre des lignes de wallet_ledger)
+    @Builder.Default
+    @Column(nullable = false, columnDefinition = "bigint default 0 not null")
+    private Long version = 0L;
+
 }
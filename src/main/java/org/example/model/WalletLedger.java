@@ -0,0 +1,44 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Journal append-only des mouvements de wallet (une ligne par mutation).
+ * Écrit dans le même statement que la mutation du wallet (cf. WalletRepository), jamais mise à jour ; les vieilles lignes
+ * sont repliées dans WalletSnapshot par la compaction.
+ */
+@Entity
+@Table(name = "wallet_ledger", indexes = {
+        @Index(name = "wl_user_version_idx", columnList = "utilisateur_id, version"),
+        @Index(name = "wl_created_idx", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class WalletLedger {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "utilisateur_id", nullable = false)
+    private Long utilisateurId;
+
+    // version du wallet après la mutation (ordre exact des mouvements d'un utilisateur)
+    @Column(nullable = false)
+    private long version;
+
+    @Column(nullable = false)
+    private long delta;
+
+    @Column(name = "solde_apres", nullable = false)
+    private long soldeApres;
+
+    @Column(nullable = false, length = 20)
+    private String type; // CREDIT, DEBIT, SETTLE...
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
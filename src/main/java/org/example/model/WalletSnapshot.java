@@ -0,0 +1,35 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Solde "checkpoint" d'un utilisateur : état du wallet à la dernière ligne de ledger repliée.
+ * Réconciliation : wallet.solde == snapshot.solde + somme(ledger.delta où version > snapshot.version)
+ * (sans snapshot : 0 + somme des lignes, le wallet ayant été ouvert par une ligne OPEN ou CREDIT).
+ */
+@Entity
+@Table(name = "wallet_snapshot")
+@Getter
+@Setter
+@NoArgsConstructor
+public class WalletSnapshot {
+    @Id
+    @Column(name = "utilisateur_id")
+    private Long utilisateurId;
+
+    @Column(nullable = false)
+    private long solde;
+
+    @Column(nullable = false)
+    private long version;
+
+    // nombre total de lignes de ledger repliées dans ce snapshot
+    @Column(name = "folded_count", nullable = false)
+    private long foldedCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,18 @@
+package org.example.repo;
+
+import org.example.model.ChatBannedWord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface ChatBannedWordRepository extends JpaRepository<ChatBannedWord, Long> {
+
+    boolean existsByMot(String mot);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from chat_banned_word where mot = :mot", nativeQuery = true)
+    int deleteByMot(@Param("mot") String mot);
+}
@@ -0,0 +1,13 @@
+package org.example.repo;
+
+import org.example.model.ChatMessageEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ChatMessageRepository extends JpaRepository<ChatMessageEntity, Long> {
+
+    // derniers messages, servis par l'index de la clé primaire
+    List<ChatMessageEntity> findByOrderByIdDesc(Pageable page);
+}
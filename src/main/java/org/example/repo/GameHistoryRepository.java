@@ -5,10 +5,19 @@ import org.example.model.GameHistory;
 import org.example.model.Utilisateur;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 public interface GameHistoryRepository extends JpaRepository<GameHistory, Long> {
     List<GameHistory> findByUtilisateurOrderByCreatedAtDesc(Utilisateur utilisateur, Pageable pageable);
     List<GameHistory> findByUtilisateurAndGameOrderByCreatedAtDesc(Utilisateur utilisateur, String game, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from game_history where utilisateur_id = :uid", nativeQuery = true)
+    int deleteByUtilisateurId(@Param("uid") Long utilisateurId);
 }
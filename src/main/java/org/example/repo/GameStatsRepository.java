@@ -0,0 +1,20 @@
+package org.example.repo;
+
+import org.example.model.GameStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface GameStatsRepository extends JpaRepository<GameStats, Long> {
+
+    List<GameStats> findByUtilisateurId(Long utilisateurId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from game_stats where utilisateur_id = :uid", nativeQuery = true)
+    int deleteByUtilisateurId(@Param("uid") Long utilisateurId);
+}
@@ -2,6 +2,10 @@ package org.example.repo;
 
 import org.example.model.TipDailyAggregate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.Optional;
@@ -10,4 +14,27 @@ public interface TipDailyAggregateRepository extends JpaRepository<TipDailyAggre
 
     Optional<TipDailyAggregate> findByUtilisateurIdAndDate(Long utilisateurId, LocalDate date);
 
+    // Ajoute un montant reçu au total du jour (crée la ligne au besoin), sans lecture préalable,
+    // seulement si le total reste sous :limit ; renvoie 0 sinon
+    @Transactional
+    @Modifying
+    @Query(value = """
+            insert into tip_daily_aggregate (utilisateur_id, date, total_received)
+            select :uid, :date, :amount where :amount <= :limit
+            on conflict (utilisateur_id, date)
+            do update set total_received = tip_daily_aggregate.total_received + excluded.total_received
+            where tip_daily_aggregate.total_received + excluded.total_received <= :limit
+            """, nativeQuery = true)
+    int addReceivedCapped(@Param("uid") Long utilisateurId, @Param("date") LocalDate date,
+                          @Param("amount") long amount, @Param("limit") long limit);
+
+    // Retire un montant confirmé puis refusé (transfert impossible)
+    @Transactional
+    @Modifying
+    @Query(value = """
+            update tip_daily_aggregate set total_received = total_received - :amount
+            where utilisateur_id = :uid and date = :date
+            """, nativeQuery = true)
+    int removeReceived(@Param("uid") Long utilisateurId, @Param("date") LocalDate date, @Param("amount") long amount);
+
 }
@@ -0,0 +1,63 @@
+package org.example.repo;
+
+import org.example.model.WalletLedger;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface WalletLedgerRepository extends JpaRepository<WalletLedger, Long> {
+
+    /**
+     * Replie (supprime) jusqu'à :batch lignes antérieures à :cutoff dans wallet_snapshot,
+     * en un seul statement. Renvoie le nombre de snapshots insérés/mis à jour (0 = plus rien à replier).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            with folded as (
+                delete from wallet_ledger where id in (
+                    select id from wallet_ledger where created_at < :cutoff order by id limit :batch
+                )
+                returning utilisateur_id, version, solde_apres
+            ), last as (
+                select distinct on (utilisateur_id) utilisateur_id, version, solde_apres,
+                       count(*) over (partition by utilisateur_id) as n
+                from folded
+                order by utilisateur_id, version desc
+            )
+            insert into wallet_snapshot (utilisateur_id, solde, version, folded_count, updated_at)
+            select utilisateur_id, solde_apres, version, n, now() from last
+            on conflict (utilisateur_id) do update set
+                solde = case when excluded.version > wallet_snapshot.version
+                             then excluded.solde else wallet_snapshot.solde end,
+                version = greatest(wallet_snapshot.version, excluded.version),
+                folded_count = wallet_snapshot.folded_count + excluded.folded_count,
+                updated_at = excluded.updated_at
+            """, nativeQuery = true)
+    int foldOlderThan(@Param("cutoff") LocalDateTime cutoff, @Param("batch") int batch);
+
+    /**
+     * Snapshot d'ouverture pour chaque wallet qui n'en a pas : solde moins la somme des lignes
+     * déjà journalisées, version juste avant la première ligne. Après coup, l'invariant de
+     * réconciliation tient pour tous les wallets (y compris ceux créés avant le journal).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            insert into wallet_snapshot (utilisateur_id, solde, version, folded_count, updated_at)
+            select w.utilisateur_id, w.solde - coalesce(l.total, 0),
+                   coalesce(l.min_version - 1, w.version), 0, localtimestamp
+            from wallet w
+            left join (
+                select utilisateur_id, sum(delta) as total, min(version) as min_version
+                from wallet_ledger group by utilisateur_id
+            ) l on l.utilisateur_id = w.utilisateur_id
+            where not exists (select 1 from wallet_snapshot s where s.utilisateur_id = w.utilisateur_id)
+            on conflict (utilisateur_id) do nothing
+            """, nativeQuery = true)
+    int seedMissingSnapshots();
+}
@@ -8,21 +8,155 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
     Optional<Wallet> findByUtilisateur(Utilisateur utilisateur);
 
+    /*
+     * Toutes les mutations du solde ci-dessous écrivent leur ligne wallet_ledger dans le même
+     * statement (CTE) : mouvement et journal sont commités ou annulés ensemble.
+     */
+
+    /** Solde, version + email renvoyés par les mutations atomiques (un seul aller-retour SQL). */
+    interface SoldeView {
+        Long getSolde();
+        Long getVersion();
+        String getEmail();
+    }
+
+    /** Variante avec l'id utilisateur, pour les mutations en masse. */
+    interface SoldeUtilisateurView extends SoldeView {
+        Long getUtilisateurId();
+    }
+
+    @Query("select w.solde as solde, w.version as version, u.email as email " +
+            "from Wallet w join w.utilisateur u where u.id = :uid")
+    Optional<SoldeView> findSoldeByUtilisateurId(@Param("uid") Long utilisateurId);
+
+    // Crédit atomique : crée le wallet s'il n'existe pas, renvoie le nouveau solde
     @Transactional
-    @Modifying
-    @Query("update Wallet w set w.solde = w.solde + :amount where w.utilisateur = :u")
-    int incrementSolde(@Param("u") Utilisateur utilisateur, @Param("amount") long amount);
+    @Query(value = """
+            with upd as (
+                insert into wallet (utilisateur_id, solde, version) values (:uid, :amount, 1)
+                on conflict (utilisateur_id) do update
+                    set solde = wallet.solde + excluded.solde, version = wallet.version + 1
+                returning utilisateur_id, solde, version
+            ), led as (
+                insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+                select utilisateur_id, version, :amount, solde, 'CREDIT', localtimestamp from upd
+            )
+            select upd.solde as solde, upd.version as version, u.email as email
+            from upd join utilisateur u on u.id = upd.utilisateur_id
+            """, nativeQuery = true)
+    Optional<SoldeView> incrementSoldeReturning(@Param("uid") Long utilisateurId, @Param("amount") long amount);
 
+    // Débit atomique : vide si solde insuffisant (ou wallet absent)
     @Transactional
-    @Modifying
-    @Query("update Wallet w set w.solde = w.solde - :amount where w.utilisateur = :u and w.solde >= :amount")
-    int decrementSoldeIfEnough(@Param("u") Utilisateur utilisateur, @Param("amount") long amount);
+    @Query(value = """
+            with upd as (
+                update wallet set solde = solde - :amount, version = version + 1
+                where utilisateur_id = :uid and solde >= :amount
+                returning utilisateur_id, solde, version
+            ), led as (
+                insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+                select utilisateur_id, version, 0 - :amount, solde, 'DEBIT', localtimestamp from upd
+            )
+            select upd.solde as solde, upd.version as version, u.email as email
+            from upd join utilisateur u on u.id = upd.utilisateur_id
+            """, nativeQuery = true)
+    Optional<SoldeView> decrementSoldeIfEnoughReturning(@Param("uid") Long utilisateurId, @Param("amount") long amount);
+
+    // Règlement d'un pari : applique (payout - stake) en une fois, vide si solde < stake
+    @Transactional
+    @Query(value = """
+            with upd as (
+                update wallet set solde = solde - :stake + :payout, version = version + 1
+                where utilisateur_id = :uid and solde >= :stake
+                returning utilisateur_id, solde, version
+            ), led as (
+                insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+                select utilisateur_id, version, :payout - :stake, solde, 'SETTLE', localtimestamp from upd
+            )
+            select upd.solde as solde, upd.version as version, u.email as email
+            from upd join utilisateur u on u.id = upd.utilisateur_id
+            """, nativeQuery = true)
+    Optional<SoldeView> settleReturning(@Param("uid") Long utilisateurId,
+                                        @Param("stake") long stake,
+                                        @Param("payout") long payout);
+
+    /**
+     * Transfert atomique :from -> :to en un seul statement. Les deux lignes sont verrouillées
+     * dans l'ordre des ids (pas d'interblocage entre A->B et B->A) puis mises à jour ensemble.
+     * Renvoie les deux nouveaux soldes, ou une liste vide (solde insuffisant / wallet absent).
+     */
+    @Transactional
+    @Query(value = """
+            with locked as (
+                select utilisateur_id, solde from wallet
+                where utilisateur_id in (:from, :to)
+                order by utilisateur_id
+                for update
+            ), upd as (
+                update wallet w
+                set solde = w.solde + case when w.utilisateur_id = :to then :amount else -(:amount) end,
+                    version = w.version + 1
+                from locked l
+                where w.utilisateur_id = l.utilisateur_id
+                  and (select count(*) from locked) = 2
+                  and exists (select 1 from locked where utilisateur_id = :from and solde >= :amount)
+                returning w.utilisateur_id as utilisateur_id, w.solde as solde, w.version as version
+            ), led as (
+                insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+                select utilisateur_id, version, case when utilisateur_id = :to then :amount else 0 - :amount end, solde, 'TRANSFER', localtimestamp from upd
+            )
+            select upd.utilisateur_id as "utilisateurId", upd.solde as solde, upd.version as version, u.email as email
+            from upd join utilisateur u on u.id = upd.utilisateur_id
+            """, nativeQuery = true)
+    List<SoldeUtilisateurView> transfer(@Param("from") Long fromUtilisateurId,
+                                        @Param("to") Long toUtilisateurId,
+                                        @Param("amount") long amount);
 
+    /**
+     * Crédit en masse d'un lot d'utilisateurs actifs (keyset sur utilisateur_id > :after, :limit lignes),
+     * en un seul statement. Renvoie les nouveaux soldes ; liste vide = plus rien à créditer.
+     */
+    @Transactional
+    @Query(value = """
+            with batch as (
+                select w.utilisateur_id from wallet w join utilisateur u on u.id = w.utilisateur_id
+                where u.active and w.utilisateur_id > :after
+                order by w.utilisateur_id
+                limit :limit
+            ), upd as (
+                update wallet w set solde = w.solde + :amount, version = w.version + 1
+                from batch b where w.utilisateur_id = b.utilisateur_id
+                returning w.utilisateur_id as utilisateur_id, w.solde as solde, w.version as version
+            ), led as (
+                insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+                select utilisateur_id, version, :amount, solde, 'CREDIT', localtimestamp from upd
+            )
+            select upd.utilisateur_id as "utilisateurId", upd.solde as solde, upd.version as version, u.email as email
+            from upd join utilisateur u on u.id = upd.utilisateur_id
+            """, nativeQuery = true)
+    List<SoldeUtilisateurView> incrementSoldeActifsApres(@Param("after") long afterUtilisateurId,
+                                                         @Param("limit") int limit,
+                                                         @Param("amount") long amount);
+
+    /** Ouverture du wallet avec son solde initial, journalisée (OPEN) dans le même statement. */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            with ins as (
+                insert into wallet (utilisateur_id, solde, version) values (:uid, :solde, 1)
+                on conflict (utilisateur_id) do nothing
+                returning utilisateur_id, solde, version
+            )
+            insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+            select utilisateur_id, version, solde, solde, 'OPEN', localtimestamp from ins
+            """, nativeQuery = true)
+    int ouvrir(@Param("uid") Long utilisateurId, @Param("solde") long solde);
 
     @Modifying
     @Query("delete from Wallet w where w.utilisateur = :u")
@@ -77,8 +77,8 @@ public class SecurityConfig {
         config.setAllowedOrigins(origins);
         config.setAllowCredentials(true);
         config.setAllowedMethods(List.of("GET","POST","PUT","DELETE","PATCH","OPTIONS"));
-        config.setAllowedHeaders(List.of("Authorization","Content-Type","Accept","Origin"));
-        config.setExposedHeaders(List.of("Authorization"));
+        config.setAllowedHeaders(List.of("Authorization","Content-Type","Accept","Origin","Idempotency-Key","If-None-Match"));
+        config.setExposedHeaders(List.of("Authorization","ETag","X-Chat-Reset"));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
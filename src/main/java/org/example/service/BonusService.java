@@ -2,7 +2,6 @@ package org.example.service;
 
 import org.example.dto.BonusStatusDTO;
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -39,7 +38,8 @@ public class BonusService {
                 .build();
     }
 
-    public Wallet claimDailyBonus(Utilisateur u) {
+    /** Crédite le bonus du jour ; renvoie le nouveau solde. */
+    public long claimDailyBonus(Utilisateur u) {
         Instant now = Instant.now();
         Instant lastReset = getLastResetInstant();
 
@@ -47,10 +47,10 @@ public class BonusService {
             throw new IllegalStateException("Bonus déjà réclamé pour aujourd'hui.");
         }
 
-        Wallet w = walletService.crediter(u, BONUS_AMOUNT);
+        long solde = walletService.crediterSolde(u.getId(), BONUS_AMOUNT);
         u.setLastBonusClaim(now);
         utilisateurRepo.save(u);
-        return w;
+        return solde;
     }
 
     // reset quotidien (Paris) -> dernier reset effectif
@@ -0,0 +1,158 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.dto.ChatEvent;
+import org.example.dto.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffusion des événements du chat sur /topic/chat.
+ * Par défaut, une trame STOMP par événement. Avec app.chat.batch.enabled=true (opt-in, le client
+ * doit savoir lire BATCH) les messages d'une rafale sont regroupés :
+ * - chat calme : le message part tout de suite et ouvre une fenêtre ;
+ * - les messages arrivés pendant la fenêtre partent ensemble à sa fermeture (un seul BATCH) ;
+ * - la fenêtre s'allonge quand les lots sont gros et se raccourcit quand le trafic retombe,
+ *   entre min-window-ms et max-window-ms.
+ * DELETE et CLEAR vident d'abord le lot en attente pour garder l'ordre.
+ * Tout passe par un seul thread : pas de verrou, ordre d'arrivée conservé.
+ */
+@Service
+public class ChatBroadcaster {
+
+    public static final String TOPIC = "/topic/chat";
+
+    // au-delà, la rafale est jugée soutenue et la fenêtre doublée
+    private static final int BUSY_BATCH = 8;
+
+    private final SimpMessagingTemplate broker;
+    private final boolean enabled;
+    private final long minWindowMs;
+    private final long maxWindowMs;
+    private final ScheduledExecutorService executor;
+
+    // état du thread de diffusion uniquement
+    private final List<ChatMessage> pending = new ArrayList<>();
+    private boolean windowOpen;
+    private volatile long windowMs;
+
+    private final Counter frames;
+    private final Counter messages;
+    private final DistributionSummary batchSize;
+
+    public ChatBroadcaster(SimpMessagingTemplate broker,
+                           @Value("${app.chat.batch.enabled:false}") boolean enabled,
+                           @Value("${app.chat.batch.min-window-ms:20}") long minWindowMs,
+                           @Value("${app.chat.batch.max-window-ms:250}") long maxWindowMs,
+                           MeterRegistry meters) {
+        this.broker = broker;
+        this.enabled = enabled;
+        this.minWindowMs = minWindowMs;
+        this.maxWindowMs = Math.max(minWindowMs, maxWindowMs);
+        this.windowMs = minWindowMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-broadcast");
+            t.setDaemon(true);
+            return t;
+        });
+        this.frames = Counter.builder("chat.broadcast.frames")
+                .description("Trames envoyées sur /topic/chat (× abonnés = fan-out)").register(meters);
+        this.messages = Counter.builder("chat.broadcast.messages").register(meters);
+        this.batchSize = DistributionSummary.builder("chat.broadcast.batch.size")
+                .description("Messages par trame").register(meters);
+        Gauge.builder("chat.broadcast.window.ms", this, b -> b.windowMs).register(meters);
+    }
+
+    public void send(ChatEvent event) {
+        executor.execute(() -> {
+            try {
+                handle(event);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private void handle(ChatEvent event) {
+        if (!enabled) {
+            publish(event, event.getType() == ChatEvent.Type.MESSAGE ? 1 : 0);
+            return;
+        }
+        if (event.getType() != ChatEvent.Type.MESSAGE) {
+            flushPending();
+            publish(event, 0);
+            return;
+        }
+        if (windowOpen) {
+            pending.add(event.getMessage());
+            return;
+        }
+        // chat calme : aucune attente pour ce message
+        publish(event, 1);
+        openWindow();
+    }
+
+    private void openWindow() {
+        windowOpen = true;
+        executor.schedule(this::closeWindow, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeWindow() {
+        try {
+            int n = flushPending();
+            if (n >= BUSY_BATCH) {
+                windowMs = Math.min(maxWindowMs, windowMs * 2);
+            } else if (n <= 1) {
+                windowMs = Math.max(minWindowMs, windowMs / 2);
+            }
+            // la rafale continue : on garde une fenêtre ouverte, sinon retour au direct
+            windowOpen = false;
+            if (n > 0) openWindow();
+        } catch (Exception ex) {
+            windowOpen = false;
+            ex.printStackTrace();
+        }
+    }
+
+    private int flushPending() {
+        int n = pending.size();
+        if (n == 0) return 0;
+        ChatEvent event = new ChatEvent();
+        if (n == 1) {
+            event.setType(ChatEvent.Type.MESSAGE);
+            event.setMessage(pending.get(0));
+        } else {
+            event.setType(ChatEvent.Type.BATCH);
+            event.setMessages(new ArrayList<>(pending));
+        }
+        pending.clear();
+        publish(event, n);
+        return n;
+    }
+
+    private void publish(ChatEvent event, int count) {
+        broker.convertAndSend(TOPIC, event);
+        frames.increment();
+        if (count > 0) {
+            messages.increment(count);
+            batchSize.record(count);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.execute(this::flushPending);
+        executor.shutdown();
+    }
+}
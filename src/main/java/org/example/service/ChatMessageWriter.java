@@ -0,0 +1,171 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.dto.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistance différée du chat dans chat_message.
+ * Les opérations (ajout, suppression, vidage) passent par une seule file, traitée dans l'ordre
+ * par un thread dédié : les ajouts consécutifs partent en un seul batch, une suppression
+ * ne peut pas doubler l'insertion du message qu'elle vise.
+ * Le chat n'est pas critique : si la base est indisponible, le lot est abandonné (et compté).
+ * Un id déjà présent n'est pas écrasé ; la ligne refusée est journalisée et comptée (chat.writer.conflicts).
+ */
+@Service
+public class ChatMessageWriter {
+
+    private static final int BATCH_SIZE = 200;
+    private static final int MAX_QUEUED = 10_000;
+
+    private static final String INSERT_SQL =
+            "insert into chat_message (id, pseudo, contenu, created_at) values (?, ?, ?, ?) on conflict (id) do nothing";
+
+    private sealed interface Op permits Insert, Delete, Clear {}
+    private record Insert(ChatMessage message) implements Op {}
+    private record Delete(long id) implements Op {}
+    private record Clear(long upToId) implements Op {}
+
+    private final JdbcTemplate jdbc;
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final long flushMs;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter conflicts;
+
+    public ChatMessageWriter(JdbcTemplate jdbc,
+                             @Value("${app.chat.writer.flush-ms:20}") long flushMs,
+                             MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.flushMs = flushMs;
+        this.written = Counter.builder("chat.writer.rows").register(meters);
+        this.dropped = Counter.builder("chat.writer.dropped")
+                .description("Opérations non persistées (file pleine ou erreur SQL)").register(meters);
+        this.conflicts = Counter.builder("chat.writer.conflicts")
+                .description("Messages refusés : id déjà en base").register(meters);
+        Gauge.builder("chat.writer.queue", queue, BlockingQueue::size).register(meters);
+    }
+
+    @PostConstruct
+    void start() {
+        thread = new Thread(this::loop, "chat-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void append(ChatMessage message) {
+        offer(new Insert(message));
+    }
+
+    public void delete(long id) {
+        offer(new Delete(id));
+    }
+
+    /** Supprime tous les messages d'id inférieur ou égal à upToId. */
+    public void clear(long upToId) {
+        offer(new Clear(upToId));
+    }
+
+    private void offer(Op op) {
+        if (!queue.offer(op)) dropped.increment();
+    }
+
+    private void loop() {
+        List<Op> ops = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Op first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                // petite fenêtre pour regrouper les rafales
+                if (flushMs > 0) Thread.sleep(flushMs);
+                ops.add(first);
+                queue.drainTo(ops, BATCH_SIZE * 4);
+                apply(ops);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                ops.clear();
+            }
+        }
+    }
+
+    private void apply(List<Op> ops) {
+        List<ChatMessage> inserts = new ArrayList<>();
+        for (Op op : ops) {
+            if (op instanceof Insert i) {
+                inserts.add(i.message());
+                continue;
+            }
+            // on conserve l'ordre : les ajouts en attente partent avant la suppression
+            insert(inserts);
+            try {
+                if (op instanceof Delete d) {
+                    jdbc.update("delete from chat_message where id = ?", d.id());
+                } else if (op instanceof Clear c) {
+                    jdbc.update("delete from chat_message where id <= ?", c.upToId());
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                dropped.increment();
+            }
+        }
+        insert(inserts);
+    }
+
+    private void insert(List<ChatMessage> rows) {
+        if (rows.isEmpty()) return;
+        try {
+            int[][] counts = jdbc.batchUpdate(INSERT_SQL, rows, BATCH_SIZE, (ps, m) -> {
+                ps.setLong(1, m.getId());
+                ps.setString(2, m.getPseudo());
+                ps.setString(3, m.getContenu());
+                ps.setObject(4, m.getDate());
+            });
+            int k = 0, ok = 0;
+            for (int[] chunk : counts) {
+                for (int c : chunk) {
+                    ChatMessage m = rows.get(k++);
+                    // SUCCESS_NO_INFO : le driver ne sait pas, on compte la ligne comme écrite
+                    if (c == 0) {
+                        conflicts.increment();
+                        System.out.println("[ChatMessageWriter] id " + m.getId() + " déjà en base, message de "
+                                + m.getPseudo() + " non persisté");
+                    } else {
+                        ok++;
+                    }
+                }
+            }
+            written.increment(ok);
+        } catch (Exception ex) {
+            System.out.println("[ChatMessageWriter] " + rows.size() + " message(s) non persistés : " + ex.getMessage());
+            dropped.increment(rows.size());
+        }
+        rows.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
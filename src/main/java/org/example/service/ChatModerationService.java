@@ -0,0 +1,273 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.example.model.ChatBannedWord;
+import org.example.repo.ChatBannedWordRepository;
+import org.example.service.bus.NotificationBus;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtre des gros mots du chat.
+ * Tous les mots sont compilés dans un automate d'Aho-Corasick : un seul passage sur le message,
+ * quel que soit le nombre de mots. Un mot n'est remplacé par *** que s'il n'est pas collé
+ * à une lettre, un chiffre ou _ (même règle que \b, lettres accentuées comprises).
+ * La liste est en base (chat_banned_word), modifiable par les admins ; chaque modification
+ * reconstruit l'automate sur tous les nœuds (bus MODERATION), sans redémarrage.
+ */
+@Service
+public class ChatModerationService {
+
+    // liste initiale, insérée si la table est vide
+    static final List<String> DEFAULT_WORDS = List.of(
+            "fdp", "ntm", "pute", "connard", "salope", "enculé", "batard",
+            "tg", "nique", "merde", "pd", "bouffon", "chienne"
+    );
+
+    private static final int MAX_WORD_LENGTH = 50;
+    private static final String MASK = "***";
+
+    private final ChatBannedWordRepository repo;
+    private final NotificationBus bus;
+    private final Timer latency;
+
+    private volatile Automaton automaton = Automaton.of(DEFAULT_WORDS);
+
+    public ChatModerationService(ChatBannedWordRepository repo, NotificationBus bus, MeterRegistry meters) {
+        this.repo = repo;
+        this.bus = bus;
+        // médiane et p99 publiées : le coût réel du filtre se lit ici, sur le trafic de production
+        this.latency = Timer.builder("chat.moderation.latency")
+                .description("Durée du filtrage d'un message")
+                .publishPercentiles(0.5, 0.99)
+                .register(meters);
+        Gauge.builder("chat.moderation.words", this, s -> s.automaton.words).register(meters);
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            if (repo.count() == 0) {
+                for (String mot : DEFAULT_WORDS) repo.save(newWord(mot));
+            }
+            recharger();
+        } catch (Exception ex) {
+            // on garde la liste par défaut
+            ex.printStackTrace();
+        }
+        bus.subscribe(NotificationBus.MODERATION, String.class, ignored -> recharger());
+    }
+
+    /** Remplace les mots interdits par ***. */
+    public String sanitize(String texte) {
+        long start = System.nanoTime();
+        String out = automaton.sanitize(texte);
+        latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return out;
+    }
+
+    public List<String> lister() {
+        return new ArrayList<>(automaton.source);
+    }
+
+    public void ajouter(String mot) {
+        String m = normaliser(mot);
+        if (!repo.existsByMot(m)) {
+            repo.save(newWord(m));
+        }
+        bus.publish(NotificationBus.MODERATION, m);
+    }
+
+    public void retirer(String mot) {
+        String m = normaliser(mot);
+        repo.deleteByMot(m);
+        bus.publish(NotificationBus.MODERATION, m);
+    }
+
+    /** Reconstruit l'automate depuis la base, puis le remplace d'un coup. */
+    public void recharger() {
+        List<String> mots = repo.findAll().stream().map(ChatBannedWord::getMot).toList();
+        automaton = Automaton.of(mots);
+        System.out.println("[Chat] filtre rechargé : " + automaton.words + " mot(s)");
+    }
+
+    private static String normaliser(String mot) {
+        String m = mot == null ? "" : mot.trim().toLowerCase();
+        if (m.isEmpty() || m.length() > MAX_WORD_LENGTH) {
+            throw new IllegalArgumentException("Mot invalide");
+        }
+        return m;
+    }
+
+    private static ChatBannedWord newWord(String mot) {
+        ChatBannedWord w = new ChatBannedWord();
+        w.setMot(mot);
+        w.setCreatedAt(LocalDateTime.now());
+        return w;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    // par code point : une lettre hors BMP (paire de substitution) colle aussi au mot
+    private static boolean isWordChar(int codePoint) {
+        return codePoint == '_' || Character.isLetterOrDigit(codePoint);
+    }
+
+    /**
+     * Automate d'Aho-Corasick immuable, compilé en table de transitions complète (DFA) :
+     * un accès tableau par caractère, sans remonter les liens d'échec pendant la lecture.
+     * Les caractères sont ramenés à un petit alphabet (ceux des mots, casse ignorée) ;
+     * tout autre caractère renvoie à la racine.
+     */
+    static final class Automaton {
+        private final char[] alphabet = new char[Character.MAX_VALUE + 1]; // caractère -> indice (0 : hors mots)
+        private final int alphabetSize;
+        private final int[] delta;    // delta[nœud * alphabetSize + indice] -> nœud
+        private final int[] wordLen;  // longueur du mot finissant sur ce nœud, 0 sinon
+        private final int[] dictLink; // nœud terminal suivant dans la chaîne des suffixes, -1 sinon
+        final int words;
+        final Collection<String> source;
+
+        private Automaton(Collection<String> mots) {
+            TreeSet<String> src = new TreeSet<>();
+            for (String mot : mots) {
+                if (mot != null && !mot.isBlank()) src.add(mot);
+            }
+            this.source = src;
+
+            // alphabet : indice 1.. pour chaque caractère (replié) présent dans les mots
+            Map<Character, Character> index = new HashMap<>();
+            for (String mot : src) {
+                for (int i = 0; i < mot.length(); i++) {
+                    index.putIfAbsent(fold(mot.charAt(i)), (char) (index.size() + 1));
+                }
+            }
+            this.alphabetSize = index.size() + 1;
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                Character k = index.get(fold((char) c));
+                if (k != null) alphabet[c] = k;
+            }
+
+            // trie
+            List<int[]> children = new ArrayList<>();
+            List<Integer> lens = new ArrayList<>();
+            children.add(new int[alphabetSize]);
+            lens.add(0);
+            for (String mot : src) {
+                int node = 0;
+                for (int i = 0; i < mot.length(); i++) {
+                    int a = alphabet[mot.charAt(i)];
+                    int nx = children.get(node)[a];
+                    if (nx == 0) {
+                        nx = children.size();
+                        children.add(new int[alphabetSize]);
+                        lens.add(0);
+                        children.get(node)[a] = nx;
+                    }
+                    node = nx;
+                }
+                lens.set(node, mot.length());
+            }
+
+            int n = children.size();
+            this.delta = new int[n * alphabetSize];
+            this.wordLen = new int[n];
+            this.dictLink = new int[n];
+            Arrays.fill(dictLink, -1);
+            int[] fail = new int[n];
+            int count = 0;
+            for (int u = 0; u < n; u++) {
+                wordLen[u] = lens.get(u);
+                if (wordLen[u] > 0) count++;
+            }
+            this.words = count;
+
+            // parcours en largeur : une transition absente reprend celle du lien d'échec (déjà calculée)
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            int[] root = children.get(0);
+            for (int a = 1; a < alphabetSize; a++) {
+                delta[a] = root[a];
+                if (root[a] != 0) queue.add(root[a]);
+            }
+            while (!queue.isEmpty()) {
+                int u = queue.poll();
+                int[] ch = children.get(u);
+                for (int a = 1; a < alphabetSize; a++) {
+                    int v = ch[a];
+                    if (v == 0) {
+                        delta[u * alphabetSize + a] = delta[fail[u] * alphabetSize + a];
+                        continue;
+                    }
+                    delta[u * alphabetSize + a] = v;
+                    fail[v] = u == 0 ? 0 : delta[fail[u] * alphabetSize + a];
+                    dictLink[v] = wordLen[fail[v]] > 0 ? fail[v] : dictLink[fail[v]];
+                    queue.add(v);
+                }
+            }
+        }
+
+        static Automaton of(Collection<String> mots) {
+            return new Automaton(mots);
+        }
+
+        String sanitize(String text) {
+            if (words == 0 || text == null) return text;
+            int[] spans = null; // paires [début, fin) à masquer, triées et disjointes
+            int nSpans = 0;
+            int node = 0;
+            int len = text.length();
+            for (int i = 0; i < len; i++) {
+                node = delta[node * alphabetSize + alphabet[text.charAt(i)]];
+
+                int m = wordLen[node] > 0 ? node : dictLink[node];
+                if (m < 0) continue;
+                if (i + 1 < len && isWordChar(text.codePointAt(i + 1))) continue;
+                // chaîne du plus long au plus court : le premier bien délimité l'emporte
+                int start = -1;
+                for (; m >= 0; m = dictLink[m]) {
+                    int s = i + 1 - wordLen[m];
+                    if (s == 0 || !isWordChar(text.codePointBefore(s))) {
+                        start = s;
+                        break;
+                    }
+                }
+                if (start < 0) continue;
+
+                if (spans == null) spans = new int[8];
+                // fusionne avec les zones déjà masquées qu'il recouvre
+                while (nSpans > 0 && spans[2 * nSpans - 1] > start) {
+                    start = Math.min(start, spans[2 * nSpans - 2]);
+                    nSpans--;
+                }
+                if (2 * nSpans + 2 > spans.length) spans = Arrays.copyOf(spans, spans.length * 2);
+                spans[2 * nSpans] = start;
+                spans[2 * nSpans + 1] = i + 1;
+                nSpans++;
+            }
+            if (nSpans == 0) return text;
+
+            StringBuilder sb = new StringBuilder(len);
+            int from = 0;
+            for (int k = 0; k < nSpans; k++) {
+                sb.append(text, from, spans[2 * k]).append(MASK);
+                from = spans[2 * k + 1];
+            }
+            return sb.append(text, from, len).toString();
+        }
+    }
+}
@@ -1,39 +1,68 @@
-// src/main/java/org/example/service/ChatService.java
 package org.example.service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.example.dto.ChatEvent;
 import org.example.model.ChatAggregate;
 import org.example.dto.ChatMessage;
+import org.example.model.ChatMessageEntity;
 import org.example.repo.ChatAggregateRepository;
+import org.example.repo.ChatMessageRepository;
+import org.example.service.bus.NotificationBus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Chat global.
+ * Les MAX_MESSAGES derniers messages vivent dans un buffer circulaire en mémoire, seule source
+ * des lectures ; chaque message est aussi écrit en ligne dans chat_message (ChatMessageWriter,
+ * par lots) et le buffer est reconstruit au démarrage par une seule requête.
+ * En multi-nœuds, les événements du bus (CHAT) tiennent à jour le buffer des autres nœuds.
+ * Ids : millisecondes * NODE_SLOTS + slot du nœud (tiré d'une séquence Postgres au démarrage) ;
+ * deux nœuds ne peuvent donc pas produire le même id, et l'ordre reste celui de l'horloge
+ * (les anciens ids, en millisecondes, restent plus petits que tous les nouveaux).
+ */
 @Service
 public class ChatService {
 
     private static final long CHAT_ID = 1L;
     private static final int MAX_MESSAGES = 500;
+    // au plus 1024 nœuds simultanés ; ms * 1024 reste un entier exact en JavaScript (< 2^53)
+    static final int NODE_SLOTS = 1024;
 
+    // uniquement pour reprendre l'ancien aggregate JSON
     @Autowired
     private ChatAggregateRepository repo;
 
+    @Autowired
+    private ChatMessageRepository messageRepo;
+
+    @Autowired
+    private ChatMessageWriter writer;
+
     @Autowired
     private ObjectMapper objectMapper;
 
-    private static final List<String> BAD_WORDS = List.of(
-            "fdp", "ntm", "pute", "connard", "salope", "enculé", "batard",
-            "tg", "nique", "merde", "pd", "bouffon", "chienne"
-    );
+    @Autowired
+    private NotificationBus bus;
+
+    @Autowired
+    private ChatModerationService moderation;
+
+    @Autowired
+    private JdbcTemplate jdbc;
 
-    // ---- Structure interne JSON ----
+    // ---- Ancien format JSON (migration) ----
     public static class Entry {
         public Long id;
         public String pseudo;
@@ -41,65 +70,260 @@ public class ChatService {
         public LocalDateTime date;
     }
 
-    private List<Entry> readEntries(ChatAggregate ag) {
-        if (ag == null || ag.getEntriesJson() == null || ag.getEntriesJson().isBlank()) {
-            return new ArrayList<>();
+    /**
+     * Buffer circulaire trié par id croissant (du plus ancien au plus récent).
+     * Les ajouts se font presque toujours en queue ; un message reçu d'un autre nœud
+     * avec un id plus ancien est inséré à sa place.
+     */
+    private static final class Ring {
+        private final ChatMessage[] items = new ChatMessage[MAX_MESSAGES];
+        private int head; // index du plus ancien
+        private int size;
+        private long lastId; // plus grand id vu (aussi ceux déjà sortis du buffer)
+        private long lastMs; // partie horloge du dernier id attribué par ce nœud
+        private int slot;
+        // incrémenté à chaque changement du contenu (ETag)
+        private volatile long version;
+        // un client à jour jusqu'à un id <= resetMark a pu manquer une sortie du buffer
+        // (éviction, suppression, vidage) : il doit tout recharger
+        private long resetMark;
+
+        private ChatMessage at(int i) {
+            return items[(head + i) % items.length];
+        }
+
+        private void set(int i, ChatMessage m) {
+            items[(head + i) % items.length] = m;
+        }
+
+        synchronized void slot(int slot) {
+            this.slot = slot;
+        }
+
+        /** Id unique (ms strictement croissantes sur ce nœud, slot propre au nœud), proche de l'horloge. */
+        synchronized ChatMessage append(String pseudo, String contenu) {
+            // au-delà du plus grand id vu : un message posté après un vidage n'est jamais effacé par celui-ci
+            lastMs = Math.max(Math.max(lastMs + 1, System.currentTimeMillis()), lastId / NODE_SLOTS + 1);
+            ChatMessage m = new ChatMessage();
+            m.setId(lastMs * NODE_SLOTS + slot);
+            m.setPseudo(pseudo);
+            m.setContenu(contenu);
+            m.setDate(LocalDateTime.now());
+            add(m);
+            return m;
+        }
+
+        /** Ajoute m à sa place ; sans effet si l'id est déjà présent ou trop ancien. */
+        synchronized boolean add(ChatMessage m) {
+            long id = m.getId();
+            lastId = Math.max(lastId, id);
+            if (size == 0 || at(size - 1).getId() < id) {
+                if (size == items.length) evictOldest();
+                set(size++, m);
+                version++;
+                return true;
+            }
+            int pos = size;
+            while (pos > 0 && at(pos - 1).getId() > id) pos--;
+            if (pos > 0 && at(pos - 1).getId() == id) return false;
+            if (size == items.length) {
+                if (pos == 0) return false; // plus ancien que tout le buffer
+                // on sort le plus ancien, tout se décale d'un cran vers la tête
+                evictOldest();
+                pos--;
+            }
+            for (int i = size; i > pos; i--) set(i, at(i - 1));
+            set(pos, m);
+            size++;
+            version++;
+            return true;
+        }
+
+        private void evictOldest() {
+            resetMark = Math.max(resetMark, items[head].getId() - 1);
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+        }
+
+        synchronized boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (at(i).getId() != id) continue;
+                for (int j = i; j < size - 1; j++) set(j, at(j + 1));
+                set(--size, null);
+                resetMark = Math.max(resetMark, lastId);
+                version++;
+                return true;
+            }
+            return false;
+        }
+
+        /** Retire les messages d'id inférieur ou égal à upToId (les plus anciens). */
+        synchronized void clear(long upToId) {
+            lastId = Math.max(lastId, upToId);
+            resetMark = Math.max(resetMark, upToId);
+            while (size > 0 && at(0).getId() <= upToId) {
+                items[head] = null;
+                head = (head + 1) % items.length;
+                size--;
+            }
+            version++;
+        }
+
+        synchronized long lastId() {
+            return lastId;
+        }
+
+        long version() {
+            return version;
+        }
+
+        synchronized List<ChatMessage> snapshot() {
+            List<ChatMessage> out = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) out.add(at(i));
+            return out;
+        }
+
+        synchronized View view() {
+            return new View(version, snapshot());
         }
+
+        /** Messages d'id > sinceId, ou null si le client doit tout recharger. */
+        synchronized List<ChatMessage> since(long sinceId) {
+            if (sinceId <= resetMark) return null;
+            int from = size;
+            while (from > 0 && at(from - 1).getId() > sinceId) from--;
+            List<ChatMessage> out = new ArrayList<>(size - from);
+            for (int i = from; i < size; i++) out.add(at(i));
+            return out;
+        }
+    }
+
+    private record View(long version, List<ChatMessage> items) {}
+
+    /** Liste complète déjà sérialisée en JSON, avec son ETag. */
+    public record Snapshot(long version, String etag, byte[] json) {}
+
+    private final Ring ring = new Ring();
+
+    // distingue les ETag d'un démarrage à l'autre (version repart de 0)
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final Object snapshotLock = new Object();
+    private volatile Snapshot snapshot;
+
+    // ---- Démarrage ----
+
+    @PostConstruct
+    public void init() {
+        ring.slot(allouerSlot());
         try {
-            return objectMapper.readValue(ag.getEntriesJson(), new TypeReference<List<Entry>>() {});
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new ArrayList<>();
+            migrerAggregate();
+            // une requête, servie par l'index de la clé primaire
+            List<ChatMessageEntity> rows = messageRepo.findByOrderByIdDesc(PageRequest.of(0, MAX_MESSAGES));
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                ring.add(toMessage(rows.get(i)));
+            }
+            System.out.println("[Chat] " + rows.size() + " message(s) rechargés");
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
+        bus.subscribe(NotificationBus.CHAT, ChatEvent.class, this::onEvent);
     }
 
-    private String writeEntries(List<Entry> list) {
+    /** Slot de ce nœud dans les ids du chat ; unique tant que moins de NODE_SLOTS nœuds tournent ensemble. */
+    private int allouerSlot() {
         try {
-            return objectMapper.writeValueAsString(list);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "[]";
+            jdbc.execute("create sequence if not exists chat_node_seq");
+            Long n = jdbc.queryForObject("select nextval('chat_node_seq')", Long.class);
+            return (int) Math.floorMod(n, (long) NODE_SLOTS);
+        } catch (Exception ex) {
+            // base indisponible : nœud seul le plus souvent, on tente au hasard
+            ex.printStackTrace();
+            return java.util.concurrent.ThreadLocalRandom.current().nextInt(NODE_SLOTS);
+        }
+    }
+
+    /** Reprise de l'ancien aggregate (liste JSON dans chat_aggregate) en lignes chat_message. */
+    private void migrerAggregate() {
+        ChatAggregate ag = repo.findById(CHAT_ID).orElse(null);
+        if (ag == null) return;
+        List<ChatMessageEntity> rows = new ArrayList<>();
+        if (ag.getEntriesJson() != null && !ag.getEntriesJson().isBlank()) {
+            try {
+                List<Entry> entries = objectMapper.readValue(ag.getEntriesJson(), new TypeReference<List<Entry>>() {});
+                for (Entry e : entries) {
+                    if (e.id == null || e.contenu == null) continue;
+                    ChatMessageEntity row = new ChatMessageEntity();
+                    row.setId(e.id);
+                    row.setPseudo(e.pseudo != null ? e.pseudo : "Invité");
+                    row.setContenu(e.contenu);
+                    row.setCreatedAt(e.date != null ? e.date : LocalDateTime.now());
+                    rows.add(row);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
+        messageRepo.saveAll(rows);
+        repo.delete(ag);
+        System.out.println("[Chat] aggregate migré : " + rows.size() + " message(s)");
     }
 
-    private ChatAggregate getOrCreateAggregate() {
-        return repo.findById(CHAT_ID).orElseGet(() -> {
-            ChatAggregate ag = new ChatAggregate();
-            ag.setId(CHAT_ID);
-            ag.setEntriesJson("[]");
-            ag.setUpdatedAt(LocalDateTime.now());
-            return repo.save(ag);
-        });
+    private static ChatMessage toMessage(ChatMessageEntity row) {
+        ChatMessage cm = new ChatMessage();
+        cm.setId(row.getId());
+        cm.setPseudo(row.getPseudo());
+        cm.setContenu(row.getContenu());
+        cm.setDate(row.getCreatedAt());
+        return cm;
     }
 
-    private String sanitizeMessage(String contenu) {
-        String texte = contenu;
-        for (String bad : BAD_WORDS) {
-            String regex = "(?i)\\b" + bad + "\\b"; // insensible à la casse
-            texte = texte.replaceAll(regex, "***");
+    // événements publiés par les autres nœuds (ceux de ce nœud sont déjà appliqués : sans effet)
+    private void onEvent(ChatEvent event) {
+        if (event.getType() == null) return;
+        switch (event.getType()) {
+            case MESSAGE -> {
+                if (event.getMessage() != null && event.getMessage().getId() != null) ring.add(event.getMessage());
+            }
+            case DELETE -> {
+                if (event.getId() != null) ring.remove(event.getId());
+            }
+            case CLEAR -> ring.clear(event.getId() != null ? event.getId() : ring.lastId());
         }
-        return texte;
     }
 
     // ---- API Service ----
 
+    /** Du plus ancien au plus récent. */
     public List<ChatMessage> getAll() {
-        ChatAggregate ag = repo.findById(CHAT_ID).orElse(null);
-        List<Entry> entries = readEntries(ag);
-
-        // du plus ancien au plus récent (comme avant)
-        entries.sort(Comparator.comparing(e -> e.date));
+        return Collections.unmodifiableList(ring.snapshot());
+    }
 
-        List<ChatMessage> result = new ArrayList<>();
-        for (Entry e : entries) {
-            ChatMessage cm = new ChatMessage();
-            cm.setId(e.id);
-            cm.setPseudo(e.pseudo);
-            cm.setContenu(e.contenu);
-            cm.setDate(e.date);
-            result.add(cm);
+    /**
+     * Liste complète (du plus ancien au plus récent) sérialisée une seule fois par changement :
+     * tant que rien ne bouge, chaque appel renvoie les mêmes octets.
+     */
+    public Snapshot snapshot() {
+        Snapshot s = snapshot;
+        if (s != null && s.version() == ring.version()) return s;
+        synchronized (snapshotLock) {
+            s = snapshot;
+            if (s != null && s.version() == ring.version()) return s;
+            View view = ring.view();
+            try {
+                s = new Snapshot(view.version(), "\"" + bootId + "-" + view.version() + "\"",
+                        objectMapper.writeValueAsBytes(view.items()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            snapshot = s;
+            return s;
         }
-        return result;
+    }
+
+    /** Messages postérieurs à sinceId, ou null si des messages ont disparu depuis (tout recharger). */
+    public List<ChatMessage> since(long sinceId) {
+        return ring.since(sinceId);
     }
 
     public ChatMessage save(String pseudo, String contenu) {
@@ -107,67 +331,36 @@ public class ChatService {
             throw new IllegalArgumentException("Message invalide");
         }
 
-        String clean = sanitizeMessage(contenu.trim());
-        ChatAggregate ag = getOrCreateAggregate();
-        List<Entry> entries = readEntries(ag);
-
-        Entry e = new Entry();
-        long nowMs = System.currentTimeMillis();
-        e.id = nowMs;
-        e.pseudo = pseudo;
-        e.contenu = clean;
-        e.date = LocalDateTime.now();
-
-        // ajoute en tête
-        List<Entry> newList = new ArrayList<>();
-        newList.add(e);
-        newList.addAll(entries);
-
-        // tronque à MAX_MESSAGES
-        while (newList.size() > MAX_MESSAGES) {
-            newList.remove(newList.size() - 1);
-        }
-
-        ag.setEntriesJson(writeEntries(newList));
-        ag.setUpdatedAt(LocalDateTime.now());
-        repo.save(ag);
-
-        ChatMessage cm = new ChatMessage();
-        cm.setId(e.id);
-        cm.setPseudo(e.pseudo);
-        cm.setContenu(e.contenu);
-        cm.setDate(e.date);
+        String clean = moderation.sanitize(contenu.trim());
+        ChatMessage cm = ring.append(pseudo, clean);
+        writer.append(cm);
         return cm;
     }
 
+    /** Vide le chat ; renvoie le dernier id effacé (à diffuser avec l'événement CLEAR). */
     @PreAuthorize("hasRole('ADMIN')")
-    public void clear() {
-        ChatAggregate ag = getOrCreateAggregate();
-        ag.setEntriesJson("[]");
-        ag.setUpdatedAt(LocalDateTime.now());
-        repo.save(ag);
+    public long clear() {
+        return clearUpToLast();
     }
 
-    // Auto-reset chaque heure
+    // Auto-reset chaque nuit
     @Scheduled(cron = "0 0 2 * * *")
     public void autoClear() {
-        ChatAggregate ag = getOrCreateAggregate();
-        ag.setEntriesJson("[]");
-        ag.setUpdatedAt(LocalDateTime.now());
-        repo.save(ag);
+        clearUpToLast();
         System.out.println("[Chat] Vidé automatiquement à " + LocalDateTime.now());
     }
 
+    private long clearUpToLast() {
+        long upTo = ring.lastId();
+        ring.clear(upTo);
+        writer.clear(upTo);
+        return upTo;
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     public void deleteById(Long id) {
-        ChatAggregate ag = getOrCreateAggregate();
-        List<Entry> entries = readEntries(ag);
-
-        boolean changed = entries.removeIf(e -> e.id != null && e.id.equals(id));
-        if (changed) {
-            ag.setEntriesJson(writeEntries(entries));
-            ag.setUpdatedAt(LocalDateTime.now());
-            repo.save(ag);
-        }
+        if (id == null) return;
+        ring.remove(id);
+        writer.delete(id);
     }
 }
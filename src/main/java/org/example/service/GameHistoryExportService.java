@@ -0,0 +1,155 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Export de l'historique complet d'un utilisateur (NDJSON ou CSV).
+ * Les lignes sont lues par curseur JDBC (fetchSize, dans une transaction en lecture seule :
+ * le driver Postgres ne pagine qu'hors autocommit) et écrites au fil de l'eau :
+ * mémoire constante quel que soit le nombre de lignes, premiers octets envoyés tout de suite.
+ * Un export tient une connexion du pool pendant tout le téléchargement (aussi lent que le client) :
+ * au plus app.history.export.max-concurrent exports simultanés, les suivants sont refusés (429).
+ * Les lignes encore dans la file de GameHistoryWriter sont écrites avant la lecture.
+ */
+@Service
+public class GameHistoryExportService {
+
+    public static final String NDJSON = "ndjson";
+    public static final String CSV = "csv";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int FLUSH_EVERY = 1000;
+
+    private static final String EXPORT_SQL = """
+            select id, game, outcome, montant_joue, montant_gagne, multiplier, created_at
+            from game_history
+            where utilisateur_id = ?
+            order by created_at, id
+            """;
+
+    private final JdbcTemplate cursorJdbc;
+    private final TransactionTemplate readOnlyTx;
+    private final ObjectMapper objectMapper;
+    private final GameHistoryWriter historyWriter;
+    private final Semaphore slots;
+
+    public GameHistoryExportService(DataSource dataSource, PlatformTransactionManager txManager, ObjectMapper objectMapper,
+                                    GameHistoryWriter historyWriter,
+                                    @Value("${app.history.export.max-concurrent:2}") int maxConcurrent) {
+        this.historyWriter = historyWriter;
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+        this.cursorJdbc = new JdbcTemplate(dataSource);
+        this.cursorJdbc.setFetchSize(FETCH_SIZE);
+        this.readOnlyTx = new TransactionTemplate(txManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    public static boolean isSupported(String format) {
+        return NDJSON.equals(format) || CSV.equals(format);
+    }
+
+    /** Prend une place d'export ; false si toutes sont prises. À rendre par {@link #liberer()}. */
+    public boolean reserver() {
+        return slots.tryAcquire();
+    }
+
+    public void liberer() {
+        slots.release();
+    }
+
+    /** Écrit tout l'historique de userId sur out ; renvoie le nombre de lignes. */
+    public long exporter(Long userId, String format, OutputStream out) throws IOException {
+        historyWriter.ecrireEnAttente(userId);
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = null;
+        if (!CSV.equals(format)) {
+            json = objectMapper.getFactory().createGenerator(w);
+            json.setRootValueSeparator(null); // un objet par ligne, séparateur écrit à la main
+            json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        } else {
+            w.write("id,game,outcome,montantJoue,montantGagne,multiplier,createdAt\n");
+        }
+        JsonGenerator g = json;
+        long[] count = {0};
+        try {
+            readOnlyTx.executeWithoutResult(status -> cursorJdbc.query(EXPORT_SQL, rs -> {
+                try {
+                    if (g != null) writeJson(g, rs, w);
+                    else writeCsv(w, rs);
+                    // premiers octets tout de suite, puis régulièrement
+                    if (++count[0] % FLUSH_EVERY == 1) w.flush();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, userId));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause(); // client parti : on arrête la lecture
+        }
+        w.flush();
+        return count[0];
+    }
+
+    private static void writeJson(JsonGenerator g, ResultSet rs, Writer w) throws SQLException, IOException {
+        g.writeStartObject();
+        g.writeNumberField("id", rs.getLong("id"));
+        g.writeStringField("game", rs.getString("game"));
+        g.writeStringField("outcome", rs.getString("outcome"));
+        g.writeNumberField("montantJoue", rs.getLong("montant_joue"));
+        g.writeNumberField("montantGagne", rs.getLong("montant_gagne"));
+        Integer mult = (Integer) rs.getObject("multiplier");
+        if (mult == null) g.writeNullField("multiplier"); else g.writeNumberField("multiplier", mult);
+        g.writeStringField("createdAt", iso(rs));
+        g.writeEndObject();
+        g.flush(); // vers le BufferedWriter, pas vers la socket
+        w.write('\n');
+    }
+
+    private static void writeCsv(Writer w, ResultSet rs) throws SQLException, IOException {
+        Object mult = rs.getObject("multiplier");
+        w.write(Long.toString(rs.getLong("id")));
+        w.write(',');
+        w.write(csv(rs.getString("game")));
+        w.write(',');
+        w.write(csv(rs.getString("outcome")));
+        w.write(',');
+        w.write(Long.toString(rs.getLong("montant_joue")));
+        w.write(',');
+        w.write(Long.toString(rs.getLong("montant_gagne")));
+        w.write(',');
+        if (mult != null) w.write(mult.toString());
+        w.write(',');
+        w.write(iso(rs));
+        w.write('\n');
+    }
+
+    private static String iso(ResultSet rs) throws SQLException {
+        return rs.getObject("created_at", LocalDateTime.class).atOffset(ZoneOffset.UTC).toString();
+    }
+
+    private static String csv(String v) {
+        if (v == null) return "";
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) return v;
+        return '"' + v.replace("\"", "\"\"") + '"';
+    }
+}
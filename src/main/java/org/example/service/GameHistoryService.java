@@ -1,32 +1,62 @@
 package org.example.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.model.GameHistoryAggregate;
 import org.example.model.Utilisateur;
 import org.example.repo.GameHistoryAggregateRepository;
+import org.example.repo.GameHistoryRepository;
 import org.example.repo.UtilisateurRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.service.util.StripedLruCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Service
 public class GameHistoryService {
 
     private static final int MAX_ENTRIES = 10;
 
+    // ancien stockage (un blob JSON par utilisateur/jeu), lu uniquement pour la migration
     @Autowired
     private GameHistoryAggregateRepository repo;
 
+    @Autowired
+    private GameHistoryRepository historyRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TransactionTemplate tx;
+
+    @Autowired
+    private GameHistoryWriter writer;
+
+    @Autowired
+    private GameStatsService stats;
+
 
     @Autowired
     private UtilisateurRepository utilisateurrepo;
@@ -35,9 +65,91 @@ public class GameHistoryService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    // In-memory cache: utilisateurId -> (game -> list(entries))
-    // NOTE: this is a simple cache kept in memory for fast reads. Consider lazy-loading / LRU if you have many users.
-    private final Map<Long, Map<String, List<Entry>>> cache = new ConcurrentHashMap<>();
+    private static final String INSERT_SQL = """
+            insert into game_history (utilisateur_id, game, outcome, montant_joue, montant_gagne, multiplier, created_at)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    // MAX_ENTRIES dernières lignes par jeu d'un utilisateur, plus anciennes d'abord.
+    // Jeux distincts par saut d'index (un accès à gh_user_game_created_idx par jeu), puis pour chacun
+    // un parcours inverse du même index limité à MAX_ENTRIES : coût indépendant de la longueur de l'historique
+    private static final String RECENT_SQL = """
+            with recursive games(game) as (
+                (select game from game_history where utilisateur_id = ? order by game limit 1)
+                union all
+                select (select h.game from game_history h
+                        where h.utilisateur_id = ? and h.game > g.game order by h.game limit 1)
+                from games g where g.game is not null
+            )
+            select g.game, r.outcome, r.montant_joue, r.montant_gagne, r.multiplier, r.created_at
+            from games g
+            cross join lateral (
+                select outcome, montant_joue, montant_gagne, multiplier, created_at, id
+                from game_history h
+                where h.utilisateur_id = ? and h.game = g.game
+                order by created_at desc, id desc
+                limit ?
+            ) r
+            where g.game is not null
+            order by g.game, r.created_at, r.id
+            """;
+
+    // In-memory cache: utilisateurId -> (game -> derniers résultats)
+    // Chargé à la demande (premier accès), borné en nombre d'utilisateurs, éviction LRU.
+    private final StripedLruCache<Long, Map<String, GameRing>> cache;
+
+    public GameHistoryService(@Value("${app.history.cache.max-users:20000}") int maxUsers, MeterRegistry meters) {
+        this.cache = new StripedLruCache<>(maxUsers, 64);
+        FunctionCounter.builder("history.cache.hits", cache, StripedLruCache::hitCount).register(meters);
+        FunctionCounter.builder("history.cache.misses", cache, StripedLruCache::missCount).register(meters);
+        FunctionCounter.builder("history.cache.evictions", cache, StripedLruCache::evictionCount).register(meters);
+        Gauge.builder("history.cache.size", cache, StripedLruCache::size).register(meters);
+        Gauge.builder("history.cache.hit.ratio", cache, StripedLruCache::hitRatio).register(meters);
+    }
+
+    /**
+     * Derniers résultats d'un (utilisateur, jeu) en tableaux primitifs circulaires.
+     * Verrou propre à chaque buffer : deux paris ne se bloquent que s'ils visent le même utilisateur et le même jeu.
+     */
+    private static final class GameRing {
+        private static final int NO_MULTIPLIER = Integer.MIN_VALUE;
+
+        final long[] createdAt = new long[MAX_ENTRIES];
+        final long[] montantJoue = new long[MAX_ENTRIES];
+        final long[] montantGagne = new long[MAX_ENTRIES];
+        final int[] multiplier = new int[MAX_ENTRIES];
+        final String[] outcome = new String[MAX_ENTRIES];
+        int head = -1; // index du plus récent
+        int size;
+
+        synchronized void push(long ts, long joue, long gagne, Integer mult, String out) {
+            head = (head + 1) % MAX_ENTRIES;
+            createdAt[head] = ts;
+            montantJoue[head] = joue;
+            montantGagne[head] = gagne;
+            multiplier[head] = mult == null ? NO_MULTIPLIER : mult;
+            outcome[head] = out;
+            if (size < MAX_ENTRIES) size++;
+        }
+
+        /** Copie des max plus récents, du plus récent au plus ancien. */
+        synchronized List<Entry> snapshot(int max) {
+            int n = Math.min(size, max);
+            List<Entry> list = new ArrayList<>(n);
+            for (int k = 0; k < n; k++) {
+                int i = Math.floorMod(head - k, MAX_ENTRIES);
+                Entry e = new Entry();
+                e.id = createdAt[i];
+                e.createdAt = createdAt[i];
+                e.montantJoue = montantJoue[i];
+                e.montantGagne = montantGagne[i];
+                e.multiplier = multiplier[i] == NO_MULTIPLIER ? null : multiplier[i];
+                e.outcome = outcome[i];
+                list.add(e);
+            }
+            return list;
+        }
+    }
 
     // DTO used internally to (de)serialize entries
     public static class Entry {
@@ -49,6 +161,9 @@ public class GameHistoryService {
         public String outcome;
     }
 
+    // Description d'un pari à historiser (mise et gain fournis à part, cf. WalletService.settle)
+    public record BetOutcome(String game, String outcome, Integer multiplier) {}
+
     // DTO returned to controller (shape compatible with old API)
     public static class HistoryRecord {
         public Long id;
@@ -80,86 +195,112 @@ public class GameHistoryService {
         }
     }
 
-    private String writeEntries(List<Entry> list) {
-        try {
-            return objectMapper.writeValueAsString(list);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return "[]";
-        }
-    }
-
     private String isoOfEpochMilli(long epochMilli) {
         return Instant.ofEpochMilli(epochMilli).atOffset(ZoneOffset.UTC).toString();
     }
 
+    private static LocalDateTime utcOfEpochMilli(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneOffset.UTC);
+    }
+
     /**
-     * Charge tous les aggregates depuis la DB au démarrage et remplit le cache.
-     * Comportement volontairement simple : on remplit le cache entièrement.
-     * Si trop gros pour la RAM, passe à une stratégie lazy.
+     * Au démarrage : migre les anciens aggregates JSON en lignes game_history
+     * et amorce game_stats si besoin.
+     * Rien n'est préchargé, le cache se remplit au premier accès de chaque utilisateur.
      */
     @PostConstruct
     public void initFromDb() {
         try {
-            List<GameHistoryAggregate> all = repo.findAll();
-            for (GameHistoryAggregate ag : all) {
-                Long userId = ag.getUtilisateurId();
-                if (userId == null) continue;
-                Map<String, List<Entry>> perUser = cache.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
-                List<Entry> entries = readEntries(ag);
-                if (entries == null) entries = new ArrayList<>();
-                perUser.put(ag.getGame(), entries);
-            }
-            // Optionnel : log le nombre chargé
-            System.out.println("[GameHistoryService] initFromDb loaded aggregates: " + cache.values().stream().mapToInt(m -> m.size()).sum() + " (users: " + cache.size() + ")");
+            migrerAggregates();
+            stats.amorcerSiVide();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    /** Reprise des anciens aggregates (un blob JSON par utilisateur/jeu) : une transaction par aggregate. */
+    private void migrerAggregates() {
+        List<GameHistoryAggregate> legacy = repo.findAll();
+        if (legacy.isEmpty()) return;
+        int rows = 0;
+        for (GameHistoryAggregate ag : legacy) {
+            List<Entry> entries = readEntries(ag);
+            rows += entries.size();
+            tx.executeWithoutResult(status -> {
+                if (ag.getUtilisateurId() != null && ag.getGame() != null && !entries.isEmpty()) {
+                    jdbc.batchUpdate(INSERT_SQL, entries, entries.size(), (ps, e) ->
+                            bindRow(ps, ag.getUtilisateurId(), ag.getGame(), e.outcome,
+                                    e.montantJoue, e.montantGagne, e.multiplier, e.createdAt));
+                }
+                repo.delete(ag);
+            });
+        }
+        System.out.println("[GameHistoryService] migrated " + legacy.size() + " aggregates (" + rows + " rows)");
+    }
+
+    private static void bindRow(java.sql.PreparedStatement ps, Long userId, String game, String outcome,
+                                long montantJoue, long montantGagne, Integer multiplier, long createdAt) throws SQLException {
+        ps.setLong(1, userId);
+        ps.setString(2, game);
+        ps.setString(3, outcome);
+        ps.setLong(4, montantJoue);
+        ps.setLong(5, montantGagne);
+        ps.setObject(6, multiplier, Types.INTEGER);
+        ps.setObject(7, utcOfEpochMilli(createdAt));
+    }
+
+    private static long epochMilli(ResultSet rs) throws SQLException {
+        return rs.getObject("created_at", LocalDateTime.class).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Derniers résultats d'un utilisateur, chargés depuis game_history au premier accès en lecture
+     * (une requête, MAX_ENTRIES lignes par jeu). Les lignes encore en file d'écriture sont écrites
+     * avant. Chargement hors verrou : si deux threads chargent en même temps, le premier inséré gagne ;
+     * un pari enregistré pendant le chargement peut manquer au buffer (pas à la base) jusqu'au suivant.
+     */
+    private Map<String, GameRing> ringsOf(Long userId) {
+        return cache.get(userId, id -> {
+            writer.ecrireEnAttente(id);
+            Map<String, GameRing> perUser = new ConcurrentHashMap<>();
+            jdbc.query(RECENT_SQL, rs -> {
+                perUser.computeIfAbsent(rs.getString("game"), k -> new GameRing())
+                        .push(epochMilli(rs), rs.getLong("montant_joue"), rs.getLong("montant_gagne"),
+                                (Integer) rs.getObject("multiplier"), rs.getString("outcome"));
+            }, id, id, id, MAX_ENTRIES);
+            return perUser;
+        });
+    }
+
     /**
-     * Record a new game result for user+game. Threadsafe per JVM (synchronized).
-     * It will prepend the entry, keep up to MAX_ENTRIES, update cache and save the aggregate.
+     * Record a new game result for user+game.
+     * Le buffer mémoire, s'il est en cache, est mis à jour tout de suite (visible par /api/history/me), la ligne
+     * game_history est écrite en différé par GameHistoryWriter après le commit du jeu.
      *
      * outcome: can be any string (kept as-is in entry.outcome)
      */
-    @Transactional
-    public synchronized void record(Utilisateur u, String game, String outcome, long montantJoue, long montantGagne, Integer multiplier) {
-        if (u == null || game == null) return;
-        Long userId = u.getId();
-        if (userId == null) return;
+    public void record(Utilisateur u, String game, String outcome, long montantJoue, long montantGagne, Integer multiplier) {
+        if (u == null) return;
+        record(u.getId(), game, outcome, montantJoue, montantGagne, multiplier);
+    }
+
+    /** Même chose que {@link #record(Utilisateur, String, String, long, long, Integer)} sans charger l'entité. */
+    public void record(Long userId, String game, String outcome, long montantJoue, long montantGagne, Integer multiplier) {
+        if (userId == null || game == null) return;
 
-        // build new entry
-        Entry e = new Entry();
         long now = System.currentTimeMillis();
-        e.id = now; // simple numeric id
-        e.createdAt = now;
-        e.montantJoue = montantJoue;
-        e.montantGagne = montantGagne;
-        e.multiplier = multiplier;
-        e.outcome = outcome;
-
-        // update cache
-        Map<String, List<Entry>> perUser = cache.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
-        List<Entry> entries = perUser.getOrDefault(game, new ArrayList<>());
-        List<Entry> newList = new ArrayList<>();
-        newList.add(e);
-        for (Entry ex : entries) {
-            if (newList.size() >= MAX_ENTRIES) break;
-            newList.add(ex);
-        }
-        perUser.put(game, newList);
-
-        // persist aggregate (create or update)
-        GameHistoryAggregate ag = repo.findByUtilisateurIdAndGame(userId, game).orElse(null);
-        if (ag == null) {
-            ag = new GameHistoryAggregate();
-            ag.setUtilisateurId(userId);
-            ag.setGame(game);
+
+        // cache mis à jour seulement si l'utilisateur y est déjà : un pari ne déclenche jamais de
+        // lecture en base, le prochain chargement relira la ligne depuis game_history
+        Map<String, GameRing> perUser = cache.getIfPresent(userId);
+        if (perUser != null) {
+            perUser.computeIfAbsent(game, k -> new GameRing())
+                    .push(now, montantJoue, montantGagne, multiplier, outcome);
         }
-        ag.setEntriesJson(writeEntries(newList));
-        ag.setUpdatedAt(LocalDateTime.now());
-        repo.save(ag);
+
+        // persist : une ligne, append-only, en batch hors du thread de requête
+        writer.append(userId, game, outcome, montantJoue, montantGagne, multiplier, now);
+        stats.record(userId, game, montantJoue, montantGagne);
     }
 
     /**
@@ -174,37 +315,49 @@ public class GameHistoryService {
         Long userId = u.getId();
         if (userId == null) return Collections.emptyList();
 
-        Map<String, List<Entry>> perUser = cache.get(userId);
-        // fallback to DB if not cached
-        if (perUser == null) {
-            List<GameHistoryAggregate> ags = repo.findByUtilisateurId(userId);
-            perUser = new HashMap<>();
-            for (GameHistoryAggregate ag : ags) {
-                perUser.put(ag.getGame(), readEntries(ag));
-            }
-            cache.put(userId, perUser);
+        Map<String, GameRing> perUser = ringsOf(userId);
+
+        // fusion k-voies : chaque buffer est déjà du plus récent au plus ancien,
+        // on ne prend que les limit premiers et on ne formate la date que pour ceux-là
+        int k = perUser.size();
+        String[] games = new String[k];
+        List<Entry>[] lists = newLists(k);
+        int[] pos = new int[k];
+        int g = 0;
+        for (Map.Entry<String, GameRing> kv : perUser.entrySet()) {
+            if (g == k) break; // jeu ajouté pendant le parcours
+            games[g] = kv.getKey();
+            lists[g] = kv.getValue().snapshot(limit);
+            g++;
         }
 
-        List<HistoryRecord> all = new ArrayList<>();
-        for (Map.Entry<String, List<Entry>> kv : perUser.entrySet()) {
-            String game = kv.getKey();
-            List<Entry> list = kv.getValue();
-            if (list == null) continue;
-
-            // TRIE par epoch ici
-            list.stream()
-                    .sorted(Comparator.comparingLong((Entry e) -> e.createdAt).reversed())
-                    .limit(limit) // tu peux limiter par jeu si tu veux
-                    .forEach(e -> all.add(new HistoryRecord(
-                            e.id, game, e.outcome, e.montantJoue, e.montantGagne, e.multiplier, isoOfEpochMilli(e.createdAt)
-                    )));
+        List<HistoryRecord> out = new ArrayList<>(Math.min(limit, k * MAX_ENTRIES));
+        while (out.size() < limit) {
+            int best = -1;
+            long bestTs = Long.MIN_VALUE;
+            for (int i = 0; i < g; i++) {
+                if (pos[i] < lists[i].size()) {
+                    long ts = lists[i].get(pos[i]).createdAt;
+                    if (best < 0 || ts > bestTs) {
+                        best = i;
+                        bestTs = ts;
+                    }
+                }
+            }
+            if (best < 0) break;
+            out.add(toRecord(games[best], lists[best].get(pos[best]++)));
         }
+        return out;
+    }
 
-        // Puis re-trie le mix final et limite globalement
-        return all.stream()
-                .sorted(Comparator.comparing((HistoryRecord r) -> r.createdAt).reversed()) // ou refais un tri par epoch si tu ajoutes createdAtMs
-                .limit(limit)
-                .collect(Collectors.toList());
+    @SuppressWarnings("unchecked")
+    private static List<Entry>[] newLists(int n) {
+        return (List<Entry>[]) new List[n];
+    }
+
+    private HistoryRecord toRecord(String game, Entry e) {
+        return new HistoryRecord(e.id, game, e.outcome, e.montantJoue, e.montantGagne, e.multiplier,
+                isoOfEpochMilli(e.createdAt));
     }
 
     /**
@@ -218,54 +371,118 @@ public class GameHistoryService {
         Long userId = u.getId();
         if (userId == null) return Collections.emptyList();
 
-        Map<String, List<Entry>> perUser = cache.get(userId);
-        List<Entry> list;
-        if (perUser != null && perUser.containsKey(game)) {
-            list = perUser.get(game);
-        } else {
-            Optional<GameHistoryAggregate> opt = repo.findByUtilisateurIdAndGame(userId, game);
-            if (opt.isEmpty()) return Collections.emptyList();
-            list = readEntries(opt.get());
-            // populate cache for future
-            cache.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(game, list);
+        GameRing ring = ringsOf(userId).get(game);
+        if (ring == null) return Collections.emptyList();
+        // déjà du plus récent au plus ancien
+        List<HistoryRecord> out = new ArrayList<>();
+        for (Entry e : ring.snapshot(limit)) out.add(toRecord(game, e));
+        return out;
+    }
+
+
+    // ---------- historique complet, pagination keyset ----------
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    // index gh_user_created_idx / gh_user_game_created_idx : coût constant quelle que soit la page
+    private static final String PAGE_SQL = """
+            select id, game, outcome, montant_joue, montant_gagne, multiplier, created_at
+            from game_history
+            where utilisateur_id = ? %s %s
+            order by created_at desc, id desc
+            limit ?
+            """;
+
+    /** Position dans l'historique : dernière ligne renvoyée (created_at, id). */
+    public record Cursor(LocalDateTime createdAt, long id) {}
+
+    /** Curseur opaque (base64url de "epochMicros:id") ; null si absent, IllegalArgumentException si invalide. */
+    public Cursor parseCursor(String token) {
+        if (token == null || token.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            long micros = Long.parseLong(raw.substring(0, sep));
+            long id = Long.parseLong(raw.substring(sep + 1));
+            Instant at = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+            return new Cursor(LocalDateTime.ofInstant(at, ZoneOffset.UTC), id);
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Curseur invalide");
         }
+    }
 
-        if (list == null) return Collections.emptyList();
-
-        return list.stream()
-                .map(e -> new HistoryRecord(
-                        e.id,
-                        game,
-                        e.outcome,
-                        e.montantJoue,
-                        e.montantGagne,
-                        e.multiplier,
-                        isoOfEpochMilli(e.createdAt)
-                ))
-                .sorted(Comparator.comparing((HistoryRecord r) -> r.createdAt).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+    private static String encodeCursor(LocalDateTime createdAt, long id) {
+        Instant at = createdAt.toInstant(ZoneOffset.UTC);
+        long micros = at.getEpochSecond() * 1_000_000L + at.getNano() / 1000;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((micros + ":" + id).getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Écrit une page d'historique directement depuis le ResultSet :
+     * {"items":[...], "nextCursor": "..." | null}. Les lignes ne sont pas matérialisées en liste.
+     */
+    public void writePage(Long userId, String game, Cursor after, int size, JsonGenerator out) throws IOException {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        if (game != null) args.add(game);
+        if (after != null) {
+            args.add(after.createdAt());
+            args.add(after.id());
+        }
+        args.add(limit);
+        String sql = PAGE_SQL.formatted(
+                game != null ? "and game = ?" : "",
+                after != null ? "and (created_at, id) < (?, ?)" : "");
+
+        out.writeStartObject();
+        out.writeArrayFieldStart("items");
+        int[] count = {0};
+        Object[] last = new Object[2];
+        jdbc.query(sql, rs -> {
+            LocalDateTime createdAt = rs.getObject("created_at", LocalDateTime.class);
+            long id = rs.getLong("id");
+            try {
+                out.writeStartObject();
+                out.writeNumberField("id", id);
+                out.writeStringField("game", rs.getString("game"));
+                out.writeStringField("outcome", rs.getString("outcome"));
+                out.writeNumberField("montantJoue", rs.getLong("montant_joue"));
+                out.writeNumberField("montantGagne", rs.getLong("montant_gagne"));
+                Integer mult = (Integer) rs.getObject("multiplier");
+                if (mult == null) out.writeNullField("multiplier"); else out.writeNumberField("multiplier", mult);
+                out.writeStringField("createdAt", createdAt.atOffset(ZoneOffset.UTC).toString());
+                out.writeEndObject();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            count[0]++;
+            last[0] = createdAt;
+            last[1] = id;
+        }, args.toArray());
+        out.writeEndArray();
+        if (count[0] == limit) out.writeStringField("nextCursor", encodeCursor((LocalDateTime) last[0], (Long) last[1]));
+        else out.writeNullField("nextCursor");
+        out.writeEndObject();
+        out.flush();
+    }
 
     @Transactional
-    public synchronized void deleteAllForUser(Utilisateur u) {
+    public void deleteAllForUser(Utilisateur u) {
         if (u == null) return;
         Long userId = u.getId();
         if (userId == null) return;
 
         // 1) Purge du cache mémoire pour cet utilisateur
-        cache.remove(userId);
+        cache.invalidate(userId);
 
-        // 2) Suppression en base
-        // Si vous avez un repo avec deleteByUtilisateurId(userId), vous pouvez l'utiliser directement.
+        // 2) Suppression en base (lignes d'historique d'abord : clé étrangère vers utilisateur) ;
+        //    les lignes encore en file d'écriture sont abandonnées
+        writer.oublier(userId);
+        historyRepo.deleteByUtilisateurId(userId);
+        stats.supprimer(userId);
         utilisateurrepo.deleteById(userId);
-
-        // Fallback générique : on récupère puis on supprime tout
-        List<GameHistoryAggregate> ags = repo.findByUtilisateurId(userId);
-        if (ags != null && !ags.isEmpty()) {
-            repo.deleteAll(ags);
-        }
     }
 
 }
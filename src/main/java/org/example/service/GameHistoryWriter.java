@@ -0,0 +1,306 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Écriture différée de game_history.
+ * - append() met la ligne en file après le commit de la transaction du jeu (rien si rollback) ;
+ * - un thread dédié regroupe les lignes (flushMs ou BATCH_SIZE lignes, le premier atteint)
+ *   en un INSERT multi-lignes ;
+ * - file bornée : si elle est pleine, l'appelant attend un peu puis écrit lui-même sa ligne
+ *   (backpressure, jamais de perte silencieuse) ; si cette écriture échoue, la ligne rejoint
+ *   les lignes en échec au lieu de faire échouer l'appelant ;
+ * - chaque INSERT est son propre commit : une ligne écrite sort aussitôt du lot, un rejeu
+ *   (base indisponible, ligne invalide) ne la réécrit jamais ;
+ * - lot en échec borné (MAX_RETRY) : au-delà, le thread cesse de vider la file et la
+ *   backpressure ci-dessus prend le relais ;
+ * - arrêt propre : la file est vidée au shutdown.
+ * En cas de crash du JVM, seules les lignes encore en file (quelques ms) sont perdues ;
+ * l'argent n'en dépend pas (chaque mutation du wallet écrit sa ligne wallet_ledger dans le même statement).
+ */
+@Service
+public class GameHistoryWriter {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_RETRY = 10 * BATCH_SIZE;
+    private static final String COLUMNS =
+            "insert into game_history (utilisateur_id, game, outcome, montant_joue, montant_gagne, multiplier, created_at) values ";
+    private static final String ROW = "(?, ?, ?, ?, ?, ?, ?)";
+
+    record Row(long userId, String game, String outcome, long montantJoue, long montantGagne,
+               Integer multiplier, long createdAt) {}
+
+    // marqueur (jamais écrit) : réveille le thread d'écriture pour qu'il termine son passage en cours
+    private static final Row WAKE = new Row(0, null, null, 0, 0, null, 0);
+    private static final long WAIT_PASS_MS = 2_000;
+
+    private final JdbcTemplate jdbc;
+    // écriture directe : appelée depuis afterCommit, la connexion du jeu n'y commite plus rien
+    private final TransactionTemplate directTx;
+    private final BlockingQueue<Row> queue;
+    private final long flushMs;
+    // lignes pas encore écrites (lot en échec), rejouées avant de reprendre la file
+    private final List<Row> retry = new ArrayList<>();
+    // passages terminés par le thread d'écriture (sous le verrou de l'instance, notifyAll à chaque fin)
+    private long passes;
+    private final String fullBatchSql = insertSql(BATCH_SIZE);
+    private volatile boolean running = true;
+    private Thread thread;
+
+    private final Counter written;
+    private final Counter direct;
+    private final DistributionSummary batchSize;
+
+    public GameHistoryWriter(JdbcTemplate jdbc,
+                             PlatformTransactionManager txManager,
+                             @Value("${app.history.writer.capacity:50000}") int capacity,
+                             @Value("${app.history.writer.flush-ms:5}") long flushMs,
+                             MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.directTx = new TransactionTemplate(txManager);
+        this.directTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushMs = flushMs;
+        this.written = Counter.builder("history.writer.rows").register(meters);
+        this.direct = Counter.builder("history.writer.direct")
+                .description("Lignes écrites par l'appelant, file pleine").register(meters);
+        this.batchSize = DistributionSummary.builder("history.writer.batch.size").register(meters);
+        Gauge.builder("history.writer.queue", queue, BlockingQueue::size).register(meters);
+    }
+
+    @PostConstruct
+    void start() {
+        thread = new Thread(this::loop, "game-history-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Historise une ligne ; différé après commit si une transaction est active. */
+    public void append(long userId, String game, String outcome, long montantJoue, long montantGagne,
+                       Integer multiplier, long createdAt) {
+        Row row = new Row(userId, game, outcome, montantJoue, montantGagne, multiplier, createdAt);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { enqueue(row); }
+            });
+        } else {
+            enqueue(row);
+        }
+    }
+
+    /**
+     * Écrit tout de suite les lignes de userId encore en file (ou en échec), par ex. avant un export
+     * qui lit game_history. Les lignes des autres utilisateurs restent en file.
+     * Le lot que le thread d'écriture a déjà sorti de la file est attendu (fin de son passage, borné
+     * à WAIT_PASS_MS) : au retour, toute ligne de userId en file à l'appel est en base ou dans retry.
+     */
+    public void ecrireEnAttente(long userId) {
+        List<Row> rows = new ArrayList<>();
+        queue.removeIf(r -> r != WAKE && r.userId() == userId && rows.add(r));
+        attendrePassage();
+        flush(rows);
+    }
+
+    private void attendrePassage() {
+        if (thread == null || !thread.isAlive() || Thread.currentThread() == thread) return;
+        long target;
+        synchronized (this) {
+            target = passes + 1;
+        }
+        // file pleine : le thread ne chôme pas, inutile de le réveiller
+        queue.offer(WAKE);
+        long deadline = System.currentTimeMillis() + WAIT_PASS_MS;
+        synchronized (this) {
+            while (passes < target && thread.isAlive()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    System.out.println("[GameHistoryWriter] passage d'écriture non terminé après " + WAIT_PASS_MS + " ms");
+                    return;
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Abandonne les lignes de userId pas encore écrites (utilisateur supprimé). */
+    public synchronized void oublier(long userId) {
+        queue.removeIf(r -> r.userId() == userId);
+        retry.removeIf(r -> r.userId() == userId);
+    }
+
+    private void enqueue(Row row) {
+        try {
+            if (running && queue.offer(row, 50, TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // file saturée (ou arrêt en cours) : écriture synchrone par l'appelant.
+        // Appelée depuis afterCommit : ne jamais lever (le jeu est commité, une erreur ici ferait
+        // rejouer le pari) ; en cas d'échec la ligne part dans retry, réécrite avec le lot suivant
+        direct.increment();
+        try {
+            directTx.executeWithoutResult(st -> insert(new ArrayList<>(List.of(row))));
+        } catch (Exception ex) {
+            synchronized (this) {
+                retry.add(row);
+            }
+            System.out.println("[GameHistoryWriter] écriture directe en échec (user " + row.userId() + "), ligne remise en attente : " + ex.getMessage());
+        }
+    }
+
+    private void loop() {
+        List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                if (retrySize() >= MAX_RETRY) {
+                    // base indisponible depuis un moment : on ne consomme plus la file, on rejoue
+                    Thread.sleep(1_000);
+                    flush(batch);
+                    continue;
+                }
+                Row first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // on complète le lot jusqu'à BATCH_SIZE lignes ou flushMs
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+                while (batch.size() < BATCH_SIZE) {
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= BATCH_SIZE || left <= 0) break;
+                    Row next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    if (next == WAKE) break; // quelqu'un attend ce lot : inutile d'attendre la fin de flushMs
+                }
+                batch.removeIf(r -> r == WAKE);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                batch.clear();
+                synchronized (this) {
+                    passes++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private synchronized int retrySize() {
+        return retry.size();
+    }
+
+    private synchronized void flush(List<Row> batch) {
+        // en cas d'échec, ce qui n'est pas écrit reste dans retry et repart avec le lot suivant
+        retry.addAll(batch);
+        try {
+            insert(retry);
+        } catch (DataIntegrityViolationException ex) {
+            // une ligne invalide (ex. utilisateur supprimé entre-temps) ne doit pas bloquer les autres :
+            // ligne à ligne, chacune sort de retry dès qu'elle est écrite ou écartée
+            while (!retry.isEmpty()) {
+                Row r = retry.get(0);
+                try {
+                    insert(retry.subList(0, 1));
+                } catch (DataIntegrityViolationException rowEx) {
+                    retry.remove(0);
+                    System.out.println("[GameHistoryWriter] ligne ignorée (user " + r.userId() + ") : " + rowEx.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    /** Écrit rows par INSERT de BATCH_SIZE lignes au plus ; chaque lot commité est retiré de rows. */
+    private void insert(List<Row> rows) {
+        while (!rows.isEmpty()) {
+            List<Row> chunk = rows.subList(0, Math.min(rows.size(), BATCH_SIZE));
+            int n = chunk.size();
+            String sql = n == BATCH_SIZE ? fullBatchSql : insertSql(n);
+            jdbc.update(sql, ps -> {
+                int i = 1;
+                for (Row r : chunk) i = bind(ps, i, r);
+            });
+            chunk.clear();
+            written.increment(n);
+            batchSize.record(n);
+        }
+    }
+
+    private static int bind(PreparedStatement ps, int i, Row r) throws SQLException {
+        ps.setLong(i++, r.userId());
+        ps.setString(i++, r.game());
+        ps.setString(i++, r.outcome());
+        ps.setLong(i++, r.montantJoue());
+        ps.setLong(i++, r.montantGagne());
+        ps.setObject(i++, r.multiplier(), Types.INTEGER);
+        ps.setObject(i++, LocalDateTime.ofInstant(Instant.ofEpochMilli(r.createdAt()), ZoneOffset.UTC));
+        return i;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sb = new StringBuilder(COLUMNS.length() + rows * (ROW.length() + 2)).append(COLUMNS);
+        for (int k = 0; k < rows; k++) {
+            if (k > 0) sb.append(", ");
+            sb.append(ROW);
+        }
+        return sb.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            thread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // ce qui resterait (thread bloqué) est écrit ici
+        List<Row> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.removeIf(r -> r == WAKE);
+        try {
+            synchronized (this) {
+                rest.addAll(0, retry);
+                retry.clear();
+            }
+            insert(rest);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
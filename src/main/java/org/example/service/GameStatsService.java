@@ -0,0 +1,271 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.model.GameStats;
+import org.example.repo.GameStatsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistiques par utilisateur et par jeu (parties, misé, gagné, plus gros gain, série en cours),
+ * tenues en mémoire au fil des paris et écrites périodiquement dans game_stats par upsert groupé.
+ * - compteurs LongAdder : pas de contention entre paris concurrents ;
+ * - chaque cellule retient ce qui a déjà été écrit, le flush n'envoie que la différence ;
+ * - un utilisateur est chargé depuis game_stats à son premier pari ou sa première lecture,
+ *   et oublié quand il est resté inactif et que tout a été écrit (pari et oubli passent par
+ *   compute sur la même clé : un pari ne peut pas tomber dans une cellule déjà oubliée) ;
+ * - un utilisateur supprimé est marqué (TOMBSTONE_MS) : ses paris encore en vol sont ignorés
+ *   et le flush ne recrée pas ses lignes.
+ */
+@Service
+public class GameStatsService {
+
+    private static final long IDLE_MS = 30 * 60 * 1000L;
+    private static final long TOMBSTONE_MS = 60 * 60 * 1000L;
+
+    private static final String UPSERT_SQL = """
+            insert into game_stats (utilisateur_id, game, parties, total_joue, total_gagne, plus_gros_gain, serie, updated_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?)
+            on conflict (utilisateur_id, game) do update set
+                parties = game_stats.parties + excluded.parties,
+                total_joue = game_stats.total_joue + excluded.total_joue,
+                total_gagne = game_stats.total_gagne + excluded.total_gagne,
+                plus_gros_gain = greatest(game_stats.plus_gros_gain, excluded.plus_gros_gain),
+                serie = excluded.serie,
+                updated_at = excluded.updated_at
+            """;
+
+    @Autowired
+    private GameStatsRepository statsRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TransactionTemplate tx;
+
+    // DTO renvoyé par /api/history/me/stats
+    public record Stats(String game, long parties, long totalJoue, long totalGagne, long net,
+                        double rtp, long plusGrosGain, long serie) {}
+
+    private static final class Cell {
+        final LongAdder parties = new LongAdder();
+        final LongAdder joue = new LongAdder();
+        final LongAdder gagne = new LongAdder();
+        final LongAccumulator plusGrosGain = new LongAccumulator(Math::max, 0L);
+        final AtomicLong serie = new AtomicLong();
+        final AtomicLong version = new AtomicLong(); // incrémenté à chaque pari
+        volatile long lastUpdateMs = System.currentTimeMillis();
+
+        // déjà écrit en base (modifiés uniquement par le flush)
+        long flushedParties;
+        long flushedJoue;
+        long flushedGagne;
+        long flushedVersion;
+
+        Cell(long parties, long joue, long gagne, long plusGrosGain, long serie) {
+            this.parties.add(parties);
+            this.joue.add(joue);
+            this.gagne.add(gagne);
+            this.plusGrosGain.accumulate(plusGrosGain);
+            this.serie.set(serie);
+            this.flushedParties = parties;
+            this.flushedJoue = joue;
+            this.flushedGagne = gagne;
+        }
+
+        void add(long montantJoue, long montantGagne) {
+            parties.increment();
+            joue.add(montantJoue);
+            gagne.add(montantGagne);
+            plusGrosGain.accumulate(montantGagne);
+            boolean win = montantGagne > montantJoue;
+            serie.updateAndGet(s -> win ? (s > 0 ? s + 1 : 1) : (s < 0 ? s - 1 : -1));
+            version.incrementAndGet();
+            lastUpdateMs = System.currentTimeMillis();
+        }
+    }
+
+    // utilisateurId -> (jeu -> cellule)
+    private final Map<Long, Map<String, Cell>> cells = new ConcurrentHashMap<>();
+    // utilisateurs supprimés -> date de suppression (ms)
+    private final Map<Long, Long> supprimes = new ConcurrentHashMap<>();
+
+    // chargement hors du verrou de la map : une requête SQL ne bloque pas les autres clés du même bin
+    private Map<String, Cell> cellsOf(Long userId) {
+        Map<String, Cell> perUser = cells.get(userId);
+        if (perUser != null) return perUser;
+        Map<String, Cell> loaded = charger(userId);
+        if (supprimes.containsKey(userId)) return loaded;
+        perUser = cells.putIfAbsent(userId, loaded);
+        return perUser != null ? perUser : loaded;
+    }
+
+    private Map<String, Cell> charger(Long userId) {
+        Map<String, Cell> perUser = new ConcurrentHashMap<>();
+        for (GameStats s : statsRepo.findByUtilisateurId(userId)) {
+            perUser.put(s.getGame(), new Cell(s.getParties(), s.getTotalJoue(), s.getTotalGagne(),
+                    s.getPlusGrosGain(), s.getSerie()));
+        }
+        return perUser;
+    }
+
+    /** Compte un pari ; appliqué après commit si une transaction est active. */
+    public void record(Long userId, String game, long montantJoue, long montantGagne) {
+        if (userId == null || game == null) return;
+        Runnable apply = () -> {
+            // appelé depuis afterCommit : le pari est commité, une erreur ici ne doit pas remonter
+            // (l'appelant le croirait annulé et un rejeu le rejouerait) ; seule la statistique est perdue
+            try {
+                apply(userId, game, montantJoue, montantGagne);
+            } catch (RuntimeException ex) {
+                System.out.println("[GameStatsService] pari non compté (user " + userId + ", " + game + ") : " + ex.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { apply.run(); }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private void apply(Long userId, String game, long montantJoue, long montantGagne) {
+        while (true) {
+            // utilisateur absent : chargé AVANT compute, la requête ne se fait pas sous le verrou du bin
+            Map<String, Cell> loaded = cells.containsKey(userId) || supprimes.containsKey(userId) ? null : charger(userId);
+            boolean[] applied = {false};
+            // sous le verrou de la clé : l'éviction (flush) ne peut pas retirer la cellule entre-temps
+            cells.compute(userId, (id, perUser) -> {
+                if (supprimes.containsKey(id)) {
+                    applied[0] = true;
+                    return perUser;
+                }
+                if (perUser == null) perUser = loaded;
+                // évincé entre le test et compute : on recharge, hors verrou
+                if (perUser == null) return null;
+                perUser.computeIfAbsent(game, g -> new Cell(0, 0, 0, 0, 0)).add(montantJoue, montantGagne);
+                applied[0] = true;
+                return perUser;
+            });
+            if (applied[0]) return;
+        }
+    }
+
+    /** Statistiques de l'utilisateur, servies depuis la mémoire. */
+    public List<Stats> statsFor(Long userId) {
+        List<Stats> out = new ArrayList<>();
+        for (Map.Entry<String, Cell> kv : cellsOf(userId).entrySet()) {
+            Cell c = kv.getValue();
+            long joue = c.joue.sum();
+            long gagne = c.gagne.sum();
+            out.add(new Stats(kv.getKey(), c.parties.sum(), joue, gagne, gagne - joue,
+                    joue == 0 ? 0.0 : (double) gagne / joue, c.plusGrosGain.get(), c.serie.get()));
+        }
+        out.sort(Comparator.comparing(Stats::game));
+        return out;
+    }
+
+    /**
+     * Amorçage unique depuis game_history quand game_stats est encore vide
+     * (la série en cours n'est pas reconstituée et part de 0).
+     */
+    public void amorcerSiVide() {
+        if (statsRepo.count() > 0) return;
+        int n = jdbc.update("""
+                insert into game_stats (utilisateur_id, game, parties, total_joue, total_gagne, plus_gros_gain, serie, updated_at)
+                select utilisateur_id, game, count(*), sum(montant_joue), sum(montant_gagne), max(montant_gagne), 0, now()
+                from game_history
+                group by utilisateur_id, game
+                on conflict (utilisateur_id, game) do nothing
+                """);
+        if (n > 0) System.out.println("[GameStatsService] game_stats amorcé depuis l'historique : " + n + " ligne(s)");
+    }
+
+    // synchronisé avec flush : un flush en cours se termine avant, les suivants ignorent l'utilisateur
+    public synchronized void supprimer(Long userId) {
+        supprimes.put(userId, System.currentTimeMillis());
+        cells.remove(userId);
+        statsRepo.deleteByUtilisateurId(userId);
+    }
+
+    /** Écrit les différences accumulées (un upsert groupé), puis oublie les utilisateurs inactifs. */
+    @Scheduled(fixedDelayString = "${app.history.stats.flush-ms:5000}")
+    public synchronized void flush() {
+        record Delta(Cell cell, long userId, String game, long parties, long joue, long gagne,
+                     long max, long serie, long version) {}
+
+        List<Delta> deltas = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Cell>> u : cells.entrySet()) {
+            if (supprimes.containsKey(u.getKey())) continue;
+            for (Map.Entry<String, Cell> g : u.getValue().entrySet()) {
+                Cell c = g.getValue();
+                long version = c.version.get();
+                if (version == c.flushedVersion) continue;
+                long parties = c.parties.sum();
+                long joue = c.joue.sum();
+                long gagne = c.gagne.sum();
+                deltas.add(new Delta(c, u.getKey(), g.getKey(), parties, joue, gagne,
+                        c.plusGrosGain.get(), c.serie.get(), version));
+            }
+        }
+
+        if (!deltas.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                // une transaction : tout ou rien, sinon un lot déjà écrit serait recompté
+                tx.executeWithoutResult(status -> jdbc.batchUpdate(UPSERT_SQL, deltas, 500, (ps, d) -> {
+                    ps.setLong(1, d.userId());
+                    ps.setString(2, d.game());
+                    ps.setLong(3, d.parties() - d.cell().flushedParties);
+                    ps.setLong(4, d.joue() - d.cell().flushedJoue);
+                    ps.setLong(5, d.gagne() - d.cell().flushedGagne);
+                    ps.setLong(6, d.max());
+                    ps.setLong(7, d.serie());
+                    ps.setObject(8, now);
+                }));
+            } catch (RuntimeException ex) {
+                // rien n'est marqué écrit : tout repartira au prochain flush
+                ex.printStackTrace();
+                return;
+            }
+            for (Delta d : deltas) {
+                d.cell().flushedParties = d.parties();
+                d.cell().flushedJoue = d.joue();
+                d.cell().flushedGagne = d.gagne();
+                d.cell().flushedVersion = d.version();
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        long idleBefore = now - IDLE_MS;
+        for (Long userId : cells.keySet()) {
+            // vérification et retrait atomiques vis-à-vis de record
+            cells.computeIfPresent(userId, (id, perUser) -> supprimes.containsKey(id) || perUser.values().stream()
+                    .allMatch(c -> c.lastUpdateMs < idleBefore && c.version.get() == c.flushedVersion) ? null : perUser);
+        }
+        supprimes.values().removeIf(t -> t < now - TOMBSTONE_MS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Déduplication des requêtes qui touchent au wallet via l'en-tête Idempotency-Key.
+ * La première requête pour (scope, clé) s'exécute et sa réponse est gardée en mémoire ;
+ * les rejeux (ou doublons concurrents) reçoivent la même réponse sans retoucher au wallet ni au RNG.
+ * - la clé est liée à une empreinte du corps : la même clé avec un autre corps est refusée (422) ;
+ * - l'action s'exécute hors transaction (execute : un seul statement, éligible au commit groupé
+ *   du wallet) ou dans sa propre transaction (executeInTransaction : plusieurs écritures liées),
+ *   ouverte APRÈS la déduplication : un doublon attend la première réponse sans tenir de connexion ;
+ * - la réponse n'est publiée qu'une fois la transaction commitée (oubliée en cas de rollback).
+ * Cache borné (éviction FIFO) et expirant, sans verrou (ConcurrentHashMap + CompletableFuture).
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final long WAIT_MS = 30_000;
+
+    @Value("${app.idempotency.ttl-ms:600000}")
+    private long ttlMs;
+
+    @Value("${app.idempotency.max-entries:50000}")
+    private int maxEntries;
+
+    @Autowired
+    private TransactionTemplate tx;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final class Entry {
+        final String key;
+        final byte[] fingerprint;
+        final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+        final long createdAt = System.currentTimeMillis();
+
+        Entry(String key, byte[] fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // ordre d'insertion, pour l'éviction quand la borne est atteinte ; on garde l'entrée elle-même
+    // pour ne pas évincer celle qui a remplacé une entrée expirée sous la même clé
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Exécute action une seule fois par (scope, key), hors transaction : pour les actions dont
+     * l'écriture tient en un statement (settle, crédit, débit). Sans clé, exécute simplement action.
+     * scope doit identifier l'utilisateur et l'endpoint (ex. email + ":slots") ;
+     * request est le corps de la requête (null si aucun), comparé lors des rejeux.
+     */
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        return run(scope, key, request, action, false);
+    }
+
+    /** Comme {@link #execute}, mais action s'exécute dans une transaction (plusieurs écritures liées). */
+    public ResponseEntity<?> executeInTransaction(String scope, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        return run(scope, key, request, action, true);
+    }
+
+    private ResponseEntity<?> run(String scope, String key, Object request, Supplier<ResponseEntity<?>> action,
+                                  boolean transactional) {
+        Supplier<ResponseEntity<?>> body = transactional ? () -> tx.execute(st -> action.get()) : action;
+        if (key == null || key.isBlank()) return body.get();
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("error", HEADER + " trop long"));
+        }
+        String k = scope + '\u0000' + key;
+
+        Entry mine = new Entry(k, fingerprint(request));
+        Entry existing = entries.putIfAbsent(k, mine);
+        if (existing != null) {
+            if (System.currentTimeMillis() - existing.createdAt > ttlMs) {
+                entries.remove(k, existing);
+                return run(scope, key, request, action, transactional);
+            }
+            if (!Arrays.equals(existing.fingerprint, mine.fingerprint)) {
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                        .body(Map.of("error", HEADER + " déjà utilisée pour une autre requête"));
+            }
+            return replay(existing, scope, key, request, action, transactional);
+        }
+        order.add(mine);
+        evictIfNeeded();
+
+        ResponseEntity<?> resp;
+        try {
+            resp = body.get();
+        } catch (RuntimeException ex) {
+            forget(mine, ex);
+            throw ex;
+        }
+
+        // les erreurs serveur ne sont pas mémorisées : le client doit pouvoir réessayer
+        if (resp.getStatusCode().is5xxServerError()) {
+            entries.remove(k, mine);
+            mine.response.complete(resp);
+        } else {
+            completeAfterCommit(mine, resp);
+        }
+        return resp;
+    }
+
+    private ResponseEntity<?> replay(Entry e, String scope, String key, Object request, Supplier<ResponseEntity<?>> action,
+                                     boolean transactional) {
+        try {
+            return e.response.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Requête identique déjà en cours"));
+        } catch (ExecutionException ee) {
+            // la première tentative a échoué : celle-ci repart de zéro
+            return run(scope, key, request, action, transactional);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "Requête identique déjà en cours"));
+        }
+    }
+
+    // appelé dans une transaction englobante, on attend son issue : un rollback annule la réponse
+    private void completeAfterCommit(Entry e, ResponseEntity<?> resp) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            e.response.complete(resp);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                e.response.complete(resp);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) forget(e, new IllegalStateException("Transaction annulée"));
+            }
+        });
+    }
+
+    private void forget(Entry e, Throwable cause) {
+        entries.remove(e.key, e);
+        e.response.completeExceptionally(cause);
+    }
+
+    private byte[] fingerprint(Object request) {
+        try {
+            byte[] body = request == null ? new byte[0] : objectMapper.writeValueAsBytes(request);
+            return MessageDigest.getInstance("SHA-256").digest(body);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (entries.size() > maxEntries) {
+            Entry oldest = order.poll();
+            if (oldest == null) return;
+            entries.remove(oldest.key, oldest);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        long limit = System.currentTimeMillis() - ttlMs;
+        entries.values().removeIf(e -> e.createdAt < limit);
+        order.removeIf(e -> entries.get(e.key) != e);
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envoi des notifications (SSE, STOMP) après commit.
+ * Dans une transaction, les envois sont mis de côté et livrés dans l'ordre, sur un thread dédié,
+ * une fois le commit réussi ; ils sont abandonnés si la transaction est annulée.
+ * Hors transaction, l'envoi est immédiat sur le thread appelant (ordre et contenu des payloads
+ * mutables, ex. état de table blackjack, préservés).
+ */
+@Component
+public class NotificationDispatcher {
+
+    private static final int MAX_QUEUED = 10_000;
+
+    private final ThreadPoolExecutor executor;
+    private final Counter dispatched;
+    private final Counter discarded;
+    private final Counter rejected;
+
+    public NotificationDispatcher(MeterRegistry meters) {
+        this.dispatched = Counter.builder("notifications.dispatched").register(meters);
+        this.discarded = Counter.builder("notifications.discarded")
+                .description("Notifications abandonnées suite à un rollback").register(meters);
+        this.rejected = Counter.builder("notifications.rejected")
+                .description("Notifications perdues, file d'envoi pleine").register(meters);
+        // un seul thread : les lots sont livrés dans l'ordre des commits
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED), r -> {
+                    Thread t = new Thread(r, "notif-after-commit");
+                    t.setDaemon(true);
+                    return t;
+                }, (r, ex) -> rejected.increment());
+    }
+
+    /** Livre la notification après le commit de la transaction courante (ou tout de suite s'il n'y en a pas). */
+    public void afterCommit(Runnable notification) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            run(notification);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Runnable> pending = (List<Runnable>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Runnable> batch = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, batch);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    List<Runnable> toSend = List.copyOf(batch);
+                    executor.execute(() -> toSend.forEach(NotificationDispatcher.this::run));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(NotificationDispatcher.this);
+                    if (status != STATUS_COMMITTED) discarded.increment(batch.size());
+                }
+            });
+            pending = batch;
+        }
+        pending.add(notification);
+    }
+
+    private void run(Runnable notification) {
+        try {
+            notification.run();
+            dispatched.increment();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -11,6 +11,9 @@ public class TipDailyResetService {
     @Autowired
     private TipDailyAggregateRepository tipRepo;
 
+    @Autowired
+    private TipQuotaService tipQuota;
+
     /**
      * Reset chaque jour à 2h du matin
      * Expression cron format Spring : second minute hour day month dayOfWeek
@@ -21,5 +24,6 @@ public class TipDailyResetService {
         System.out.println("⚡ Reset automatique des tips journaliers (2h du matin)");
 
         tipRepo.deleteAll();
+        tipQuota.reset();
     }
 }
@@ -0,0 +1,119 @@
+package org.example.service;
+
+import org.example.model.TipDailyAggregate;
+import org.example.repo.TipDailyAggregateRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quota journalier de tips reçus.
+ * Chaque receveur a un compteur atomique en mémoire (initialisé depuis tip_daily_aggregate au premier accès) :
+ * la réservation est un simple CAS qui écarte sans requête les tips hors quota.
+ * Le plafond fait foi en base : confirmer() n'incrémente tip_daily_aggregate que si le total reste
+ * sous DAILY_LIMIT, ce qui tient aussi en multi-nœuds (chaque nœud n'a qu'une vue partielle en mémoire).
+ * Une réservation garde le compteur sur lequel elle a été prise : la rendre après un reset
+ * ne touche pas le compteur du jour suivant.
+ */
+@Service
+public class TipQuotaService {
+
+    public static final long DAILY_LIMIT = 10_000;
+
+    @Autowired
+    private TipDailyAggregateRepository tipRepo;
+
+    /** Montant réservé sur le quota d'un receveur, à confirmer ou à rendre. */
+    public static final class Reservation {
+        private final Long userId;
+        private final LocalDate jour;
+        private final long montant;
+        private final AtomicLong compteur;
+        private final AtomicBoolean rendue = new AtomicBoolean();
+
+        private Reservation(Long userId, LocalDate jour, long montant, AtomicLong compteur) {
+            this.userId = userId;
+            this.jour = jour;
+            this.montant = montant;
+            this.compteur = compteur;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, AtomicLong> recus = new ConcurrentHashMap<>();
+    private volatile LocalDate jour = LocalDate.now();
+
+    /** Montant que l'utilisateur peut encore recevoir aujourd'hui. */
+    public long restant(Long userId) {
+        return Math.max(0, DAILY_LIMIT - compteur(userId).get());
+    }
+
+    /** Réserve montant sur le quota du receveur ; null si le quota serait dépassé. */
+    public Reservation reserver(Long userId, long montant) {
+        LocalDate today = jour();
+        AtomicLong c = compteur(userId);
+        while (true) {
+            long cur = c.get();
+            if (cur + montant > DAILY_LIMIT) return null;
+            if (c.compareAndSet(cur, cur + montant)) return new Reservation(userId, today, montant, c);
+        }
+    }
+
+    /** Rend une réservation (transfert refusé ou annulé) ; sans effet si elle l'est déjà. */
+    public void liberer(Reservation r) {
+        if (r.rendue.compareAndSet(false, true)) r.compteur.addAndGet(-r.montant);
+    }
+
+    /**
+     * Persiste une réservation (upsert plafonné, sans lecture préalable) ; false si le plafond
+     * est déjà atteint en base (tips reçus via d'autres nœuds) : la réservation doit alors être rendue.
+     * Si la transaction courante est annulée, la réservation est rendue.
+     */
+    public boolean confirmer(Reservation r) {
+        // enregistré avant l'écriture : un échec de l'upsert lui-même rend aussi la réservation
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) liberer(r);
+                }
+            });
+        }
+        return tipRepo.addReceivedCapped(r.userId, r.jour, r.montant, DAILY_LIMIT) > 0;
+    }
+
+    /** Défait une réservation déjà confirmée (transfert refusé dans la même transaction). */
+    public void annuler(Reservation r) {
+        tipRepo.removeReceived(r.userId, r.jour, r.montant);
+        liberer(r);
+    }
+
+    /** Oublie tous les compteurs (reset quotidien). */
+    public void reset() {
+        recus.clear();
+        jour = LocalDate.now();
+    }
+
+    private LocalDate jour() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(jour)) {
+            synchronized (this) {
+                if (!today.equals(jour)) reset();
+            }
+        }
+        return today;
+    }
+
+    private AtomicLong compteur(Long userId) {
+        LocalDate today = jour();
+        return recus.computeIfAbsent(userId, id -> new AtomicLong(
+                tipRepo.findByUtilisateurIdAndDate(id, today)
+                        .map(TipDailyAggregate::getTotalReceived)
+                        .orElse(0L)));
+    }
+}
@@ -1,7 +1,6 @@
 package org.example.service;
 
 import org.example.model.Utilisateur;
-import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.repo.WalletRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,12 +34,8 @@ public class UtilisateurService {
 
         Utilisateur saved = utilisateurRepo.save(u);
 
-        // créer wallet initial avec 1000 crédits (via builder si Wallet utilise Lombok)
-        Wallet w = Wallet.builder()
-                .utilisateur(saved)
-                .solde(1000L)
-                .build();
-        walletRepo.save(w);
+        // wallet initial avec 1000 crédits, journalisé (OPEN) dans le même statement
+        walletRepo.ouvrir(saved.getId(), 1000L);
 
         return saved;
     }
@@ -0,0 +1,313 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Mode "group commit" (opt-in, app.wallet.group-commit.enabled=true) :
+ * les mutations concurrentes arrivant dans une fenêtre de quelques centaines de µs
+ * sont appliquées par un thread unique dans UNE transaction, sur une connexion dédiée,
+ * dans leur ordre d'arrivée (les mutations consécutives de même nature partent en un batch JDBC).
+ * Chaque appelant reçoit son propre résultat (solde après SA mutation, ou solde insuffisant).
+ *
+ * Réservé aux appels hors transaction (cf. WalletService.appliquer) : le commit groupé est alors
+ * le seul commit de la mutation, et l'appelant n'a ni connexion ni verrou en attendant le worker.
+ * Attente bornée (timeout-ms) : une mutation pas encore prise par le worker est abandonnée
+ * proprement ; après l'arrêt, submit échoue immédiatement.
+ */
+@Component
+public class WalletGroupCommitter {
+
+    // comme WalletRepository : la ligne de journal part dans le même statement (1 ligne = mutation appliquée)
+    private static final String UPSERT_CREDIT_SQL = """
+            with upd as (
+                insert into wallet (utilisateur_id, solde, version) values (?, ?, 1)
+                on conflict (utilisateur_id) do update
+                    set solde = wallet.solde + excluded.solde, version = wallet.version + 1
+                returning utilisateur_id, solde, version
+            )
+            insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+            select utilisateur_id, version, ?, solde, ?, localtimestamp from upd
+            """;
+    static final String CONDITIONAL_UPDATE_SQL = """
+            with upd as (
+                update wallet set solde = solde + ?, version = version + 1
+                where utilisateur_id = ? and solde >= ?
+                returning utilisateur_id, solde, version
+            )
+            insert into wallet_ledger (utilisateur_id, version, delta, solde_apres, type, created_at)
+            select utilisateur_id, version, ?, solde, ?, localtimestamp from upd
+            """;
+    private static final String SELECT_SQL = """
+            select w.utilisateur_id, w.solde, w.version, u.email
+            from wallet w join utilisateur u on u.id = w.utilisateur_id
+            where w.utilisateur_id = any (?)
+            """;
+
+    @Value("${app.wallet.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.wallet.group-commit.window-micros:200}")
+    private long windowMicros;
+
+    @Value("${app.wallet.group-commit.max-batch:256}")
+    private int maxBatch;
+
+    @Value("${app.wallet.group-commit.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meters;
+
+    /** Résultat pour un appelant. */
+    public record Applied(long solde, long version, String email) {}
+
+    private static final class Op {
+        final long userId;
+        final long delta;
+        final long minRequired; // solde minimal avant mutation (0 pour un crédit)
+        final String type;
+        final CompletableFuture<Applied> result = new CompletableFuture<>();
+        // pris par le worker, ou abandonné par l'appelant (timeout) : le premier gagne
+        final java.util.concurrent.atomic.AtomicBoolean claimed = new java.util.concurrent.atomic.AtomicBoolean();
+        boolean ok;
+
+        Op(long userId, long delta, long minRequired, String type) {
+            this.userId = userId;
+            this.delta = delta;
+            this.minRequired = minRequired;
+            this.type = type;
+        }
+
+        boolean isCredit() { return delta >= 0 && minRequired <= 0; }
+    }
+
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private Connection conn; // utilisée uniquement par le thread worker
+    private Thread worker;
+    private volatile boolean running;
+
+    private Counter commits;
+    private Counter ops;
+    private DistributionSummary batchSize;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        commits = meters.counter("wallet.groupcommit.commits");
+        ops = meters.counter("wallet.groupcommit.ops");
+        batchSize = meters.summary("wallet.groupcommit.batch.size");
+
+        running = true;
+        worker = new Thread(this::loop, "wallet-group-commit");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    /**
+     * Soumet une mutation et attend son commit groupé.
+     * Lève IllegalArgumentException("Solde insuffisant") si solde < minRequired.
+     */
+    public Applied submit(long userId, long delta, long minRequired, String type) {
+        if (!running) throw new IllegalStateException("Commit groupé du wallet arrêté");
+        Op op = new Op(userId, delta, minRequired, type);
+        queue.add(op);
+        try {
+            try {
+                return op.result.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (op.claimed.compareAndSet(false, true)) {
+                    // jamais prise par le worker : rien n'a été appliqué
+                    throw new IllegalStateException("Wallet indisponible, réessayez");
+                }
+                // déjà en cours d'application : on attend son issue, toujours borné
+                return op.result.get(timeoutMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Commit du wallet sans réponse", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompu pendant le commit du wallet", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void loop() {
+        List<Op> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Op first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + windowMicros * 1_000L;
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Op next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                // les mutations abandonnées par leur appelant (timeout) ne sont pas appliquées
+                batch.removeIf(op -> !op.claimed.compareAndSet(false, true));
+                if (!batch.isEmpty()) process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Op> batch) {
+        try {
+            Map<Long, Object[]> finals = inTransaction(c -> applyBatch(c, batch));
+            complete(batch, finals);
+        } catch (Exception ex) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(
+                        ex instanceof RuntimeException re ? re : new IllegalStateException(ex));
+                return;
+            }
+            // une mutation fautive (ex. utilisateur inexistant) annule tout le lot : on rejoue une par une
+            for (Op op : batch) process(List.of(op));
+        }
+    }
+
+    private interface SqlWork<T> {
+        T run(Connection c) throws SQLException;
+    }
+
+    /*
+     * Connexion dédiée, gardée ouverte : le worker ne dispute pas le pool aux requêtes et
+     * n'emprunte rien par lot. Les appelants, hors transaction, n'en tiennent aucune pendant l'attente.
+     */
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        if (conn == null || !conn.isValid(1)) {
+            if (conn != null) try { conn.close(); } catch (SQLException ignored) {}
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+        }
+        try {
+            T out = work.run(conn);
+            conn.commit();
+            return out;
+        } catch (SQLException | RuntimeException ex) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw ex;
+        }
+    }
+
+    // Exécute le lot dans l'ordre d'arrivée, renvoie userId -> {solde, version, email} finaux
+    private Map<Long, Object[]> applyBatch(Connection c, List<Op> batch) throws SQLException {
+        try (PreparedStatement credit = c.prepareStatement(UPSERT_CREDIT_SQL);
+             PreparedStatement conditional = c.prepareStatement(CONDITIONAL_UPDATE_SQL)) {
+            // suite de mutations consécutives de même nature -> un batch JDBC
+            int from = 0;
+            while (from < batch.size()) {
+                boolean isCredit = batch.get(from).isCredit();
+                int to = from;
+                while (to < batch.size() && batch.get(to).isCredit() == isCredit) to++;
+                List<Op> run = batch.subList(from, to);
+                PreparedStatement ps = isCredit ? credit : conditional;
+                for (Op op : run) {
+                    if (isCredit) {
+                        ps.setLong(1, op.userId);
+                        ps.setLong(2, op.delta);
+                        ps.setLong(3, op.delta);
+                        ps.setString(4, op.type);
+                    } else {
+                        ps.setLong(1, op.delta);
+                        ps.setLong(2, op.userId);
+                        ps.setLong(3, op.minRequired);
+                        ps.setLong(4, op.delta);
+                        ps.setString(5, op.type);
+                    }
+                    ps.addBatch();
+                }
+                markResults(run, ps.executeBatch());
+                from = to;
+            }
+        }
+
+        Long[] ids = batch.stream().map(op -> op.userId).distinct().toArray(Long[]::new);
+        Map<Long, Object[]> finals = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_SQL)) {
+            ps.setArray(1, c.createArrayOf("bigint", ids));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    finals.put(rs.getLong(1), new Object[]{rs.getLong(2), rs.getLong(3), rs.getString(4)});
+                }
+            }
+        }
+        return finals;
+    }
+
+    private static void markResults(List<Op> list, int[] counts) {
+        for (int i = 0; i < counts.length; i++) list.get(i).ok = counts[i] > 0;
+    }
+
+    // Solde/version propres à chaque appelant : valeurs finales moins les mutations réussies postérieures
+    private void complete(List<Op> batch, Map<Long, Object[]> finals) {
+        commits.increment();
+        ops.increment(batch.size());
+        batchSize.record(batch.size());
+
+        Map<Long, long[]> later = new HashMap<>(); // userId -> {somme deltas, nb mutations}
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Op op = batch.get(i);
+            if (!op.ok) {
+                op.result.completeExceptionally(new IllegalArgumentException("Solde insuffisant"));
+                continue;
+            }
+            Object[] f = finals.get(op.userId);
+            long[] acc = later.computeIfAbsent(op.userId, k -> new long[2]);
+            long solde = (Long) f[0] - acc[0];
+            long version = (Long) f[1] - acc[1];
+            acc[0] += op.delta;
+            acc[1] += 1;
+            op.result.complete(new Applied(solde, version, (String) f[2]));
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (worker == null) return;
+        running = false;
+        try {
+            worker.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // ce qui n'a pas été traité échoue tout de suite plutôt que d'attendre le timeout
+        for (Op op; (op = queue.poll()) != null; ) {
+            if (op.claimed.compareAndSet(false, true)) {
+                op.result.completeExceptionally(new IllegalStateException("Commit groupé du wallet arrêté"));
+            }
+        }
+        if (conn != null) try { conn.close(); } catch (SQLException ignored) {}
+    }
+}
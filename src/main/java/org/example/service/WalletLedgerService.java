@@ -0,0 +1,61 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.repo.WalletLedgerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Journal des mouvements de wallet.
+ * - chaque mutation écrit sa ligne wallet_ledger dans le même statement que la mise à jour
+ *   du solde (cf. WalletRepository) : pas de ligne perdue après commit, rien si rollback ;
+ * - au démarrage, chaque wallet sans snapshot reçoit son solde d'ouverture dans wallet_snapshot,
+ *   pour que wallet.solde == snapshot.solde + somme(ledger.delta) soit vrai pour tous ;
+ * - la compaction nocturne replie les vieilles lignes dans wallet_snapshot.
+ */
+@Service
+public class WalletLedgerService {
+
+    public static final String OPEN = "OPEN";
+    public static final String CREDIT = "CREDIT";
+    public static final String DEBIT = "DEBIT";
+    public static final String SETTLE = "SETTLE";
+    public static final String TRANSFER = "TRANSFER";
+
+    private static final int FOLD_BATCH = 10_000;
+
+    @Autowired
+    private WalletLedgerRepository ledgerRepo;
+
+    @Value("${app.wallet.ledger.retention-days:30}")
+    private int retentionDays;
+
+    @PostConstruct
+    void amorcerSnapshots() {
+        try {
+            int n = ledgerRepo.seedMissingSnapshots();
+            if (n > 0) System.out.println("[WalletLedger] " + n + " snapshot(s) d'ouverture créés");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Compaction : replie les lignes plus vieilles que la rétention dans wallet_snapshot,
+     * par lots pour garder des transactions courtes.
+     */
+    @Scheduled(cron = "0 30 3 * * *", zone = "Europe/Paris")
+    public void compacter() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        int users = 0;
+        int n;
+        while ((n = ledgerRepo.foldOlderThan(cutoff, FOLD_BATCH)) > 0) {
+            users += n;
+        }
+        System.out.println("[WalletLedger] compaction avant " + cutoff + " : " + users + " snapshot(s) mis à jour");
+    }
+}
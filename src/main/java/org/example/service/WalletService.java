@@ -4,21 +4,82 @@ import org.example.model.Utilisateur;
 import org.example.model.Wallet;
 import org.example.repo.UtilisateurRepository;
 import org.example.repo.WalletRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.service.bus.NotificationBus;
+import org.example.service.util.StripedLruCache;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 public class WalletService {
+    // Cache des soldes : userId -> (solde, version). Alimenté par le résultat de chaque mutation,
+    // une valeur n'en remplace une autre que si sa version est plus récente. En multi-nœuds,
+    // les mutations des autres nœuds arrivent par le bus (WALLET). Le cache reste un raccourci
+    // d'affichage : un chemin où l'argent compte lit la base (lireSolde).
+    private record Balance(long solde, long version) {}
+
+    private final StripedLruCache<Long, Balance> balances;
+
+    private static final int CREDIT_BATCH = 1000;
+
     @Autowired
     private WalletRepository walletRepo;
 
     @Autowired
     private WalletSseService walletSseService;
 
+    @Autowired
+    private NotificationDispatcher notifications;
+
     @Autowired
     private UtilisateurRepository utilisateurRepo;
 
+    @Autowired
+    private GameHistoryService historyService;
+
+    @Autowired
+    private WalletGroupCommitter groupCommit;
+
+    @Autowired
+    private NotificationBus bus;
+
+    public WalletService(@Value("${app.wallet.cache.max-size:100000}") int cacheMaxSize, MeterRegistry meters) {
+        this.balances = new StripedLruCache<>(cacheMaxSize, 64);
+        FunctionCounter.builder("wallet.balance.cache.hits", balances, StripedLruCache::hitCount).register(meters);
+        FunctionCounter.builder("wallet.balance.cache.misses", balances, StripedLruCache::missCount).register(meters);
+        FunctionCounter.builder("wallet.balance.cache.evictions", balances, StripedLruCache::evictionCount).register(meters);
+        Gauge.builder("wallet.balance.cache.size", balances, StripedLruCache::size).register(meters);
+        Gauge.builder("wallet.balance.cache.hit.ratio", balances, StripedLruCache::hitRatio).register(meters);
+    }
+
+    /** Résultat d'un {@link #settle} : solde final + montants appliqués. */
+    public static final class SettleResult {
+        public final long solde;
+        public final long stake;
+        public final long payout;
+
+        public SettleResult(long solde, long stake, long payout) {
+            this.solde = solde;
+            this.stake = stake;
+            this.payout = payout;
+        }
+
+        public boolean win() { return payout > 0; }
+        public long net() { return payout - stake; }
+    }
+
     public Wallet getWalletParUtilisateur(Utilisateur u) {
         return walletRepo.findByUtilisateur(u).orElseGet(() -> {
             Wallet w = Wallet.builder()
@@ -29,23 +90,181 @@ public class WalletService {
         });
     }
 
-    @Transactional
-    public Wallet crediter(Utilisateur u, long montant) {
-        getWalletParUtilisateur(u);
-        int updated = walletRepo.incrementSolde(u, montant);
-        Wallet w = walletRepo.findByUtilisateur(u).orElseThrow();
-        walletSseService.sendBalanceUpdate(u.getEmail(), w.getSolde());
-        return w;
+    /** Solde courant (0 si l'utilisateur n'a pas encore de wallet), servi depuis le cache si possible. */
+    public long getSolde(Long userId) {
+        Balance b = balances.get(userId, id -> walletRepo.findSoldeByUtilisateurId(id)
+                .map(v -> new Balance(v.getSolde(), v.getVersion()))
+                .orElse(null));
+        return b != null ? b.solde() : 0L;
+    }
+
+    /** Solde lu en base (0 sans wallet), pour les chemins où l'argent compte ; rafraîchit le cache au passage. */
+    public long lireSolde(Long userId) {
+        return walletRepo.findSoldeByUtilisateurId(userId)
+                .map(v -> {
+                    putIfNewer(userId, new Balance(v.getSolde(), v.getVersion()));
+                    return v.getSolde();
+                })
+                .orElse(0L);
     }
 
+    // solde publié par un nœud (celui-ci compris) : ne remplit pas le cache, rafraîchit ce qu'il contient
+    @PostConstruct
+    void ecouterSoldes() {
+        bus.subscribe(NotificationBus.WALLET, WalletSseService.BalanceUpdate.class, u -> {
+            if (u.userId() == null) return;
+            if (u.version() <= 0) {
+                balances.invalidate(u.userId());
+                return;
+            }
+            Balance b = new Balance(u.solde(), u.version());
+            balances.update(u.userId(), cur -> cur == null ? null : (b.version() > cur.version() ? b : cur));
+        });
+    }
+
+    /** À appeler après une écriture du solde qui ne passe pas par {@link #appliquer}. */
+    public void invaliderCache(Long userId) {
+        if (userId != null) balances.invalidate(userId);
+    }
+
+    // Met le cache à jour une fois la transaction commitée (et l'invalide en cas de rollback)
+    private void rafraichirCache(Long userId, long solde, long version) {
+        Balance b = new Balance(solde, version);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putIfNewer(userId, b);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) putIfNewer(userId, b);
+                else balances.invalidate(userId);
+            }
+        });
+    }
+
+    private void putIfNewer(Long userId, Balance b) {
+        balances.update(userId, cur -> (cur == null || b.version() > cur.version()) ? b : cur);
+    }
+
+    // Les IllegalArgumentException (montant invalide, solde insuffisant) sont levées sans rien avoir écrit :
+    // elles ne condamnent pas la transaction de l'appelant, qui les traduit en 400.
+
+    /**
+     * Crédit atomique par id utilisateur : un seul statement (upsert ... returning),
+     * le wallet est créé au besoin. Renvoie le nouveau solde.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, noRollbackFor = IllegalArgumentException.class)
+    public long crediterSolde(Long userId, long montant) {
+        if (montant <= 0) throw new IllegalArgumentException("Montant invalide");
+        return appliquer(userId, montant, 0L, WalletLedgerService.CREDIT,
+                () -> walletRepo.incrementSoldeReturning(userId, montant)).solde();
+    }
+
+    /**
+     * Débit atomique par id utilisateur : un seul statement (update ... where solde >= montant returning).
+     * Lève IllegalArgumentException si le solde est insuffisant.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, noRollbackFor = IllegalArgumentException.class)
+    public long debiterSolde(Long userId, long montant) {
+        if (montant <= 0) throw new IllegalArgumentException("Montant invalide");
+        return appliquer(userId, -montant, montant, WalletLedgerService.DEBIT,
+                () -> walletRepo.decrementSoldeIfEnoughReturning(userId, montant)).solde();
+    }
+
+    /**
+     * Règle un pari instantané dans une seule transaction : vérifie la mise, applique le delta net
+     * (payout - stake) en un statement, ajoute la ligne d'historique et pousse un seul event solde.
+     * Lève IllegalArgumentException si la mise est invalide ou le solde insuffisant.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, noRollbackFor = IllegalArgumentException.class)
+    public SettleResult settle(Long userId, long stake, long payout, GameHistoryService.BetOutcome entry) {
+        if (stake <= 0 || payout < 0) throw new IllegalArgumentException("Montant invalide");
+        WalletGroupCommitter.Applied a = appliquer(userId, payout - stake, stake, WalletLedgerService.SETTLE,
+                () -> walletRepo.settleReturning(userId, stake, payout));
+        if (entry != null) {
+            historyService.record(userId, entry.game(), entry.outcome(), stake, payout, entry.multiplier());
+        }
+        return new SettleResult(a.solde(), stake, payout);
+    }
+
+    /** Issue d'un transfert : le destinataire sans wallet se distingue d'un solde insuffisant. */
+    public enum Transfert { OK, SOLDE_INSUFFISANT, DESTINATAIRE_ABSENT }
+
+    /**
+     * Transfert atomique entre deux utilisateurs (tips) : un seul statement, verrous pris dans
+     * l'ordre des ids. Toujours exécuté dans la transaction courante (pas de commit groupé).
+     * Hors OK rien n'est modifié : DESTINATAIRE_ABSENT si le receveur n'a pas de wallet,
+     * SOLDE_INSUFFISANT sinon (un donneur sans wallet a un solde nul) ; pas d'exception ici
+     * pour ne pas marquer la transaction appelante rollback-only.
+     */
     @Transactional
-    public Wallet debiter(Utilisateur u, long montant) {
-        getWalletParUtilisateur(u);
-        int updated = walletRepo.decrementSoldeIfEnough(u, montant);
-        if (updated == 0) throw new IllegalArgumentException("Solde insuffisant");
-        Wallet w = walletRepo.findByUtilisateur(u).orElseThrow();
-        walletSseService.sendBalanceUpdate(u.getEmail(), w.getSolde());
-        return w;
+    public Transfert transferer(Long fromUserId, Long toUserId, long montant) {
+        if (montant <= 0 || fromUserId.equals(toUserId)) throw new IllegalArgumentException("Montant invalide");
+        List<WalletRepository.SoldeUtilisateurView> rows = walletRepo.transfer(fromUserId, toUserId, montant);
+        if (rows.size() != 2) {
+            // chemin d'échec seulement : une lecture de plus pour expliquer le refus
+            return walletRepo.findSoldeByUtilisateurId(toUserId).isPresent()
+                    ? Transfert.SOLDE_INSUFFISANT : Transfert.DESTINATAIRE_ABSENT;
+        }
+        for (WalletRepository.SoldeUtilisateurView v : rows) {
+            Long userId = v.getUtilisateurId();
+            rafraichirCache(userId, v.getSolde(), v.getVersion());
+            notifierSolde(v.getEmail(), userId, v.getSolde(), v.getVersion());
+        }
+        return Transfert.OK;
+    }
+
+    /**
+     * Crédite tous les utilisateurs actifs, par lots keyset de CREDIT_BATCH wallets
+     * (un UPDATE ... RETURNING et une transaction courte par lot). Seuls les utilisateurs
+     * ayant un flux SSE ouvert sont notifiés. Renvoie le nombre de wallets crédités.
+     */
+    public int crediterTousActifs(long montant) {
+        int total = 0;
+        long after = 0L;
+        List<WalletRepository.SoldeUtilisateurView> lot;
+        while (!(lot = walletRepo.incrementSoldeActifsApres(after, CREDIT_BATCH, montant)).isEmpty()) {
+            for (WalletRepository.SoldeUtilisateurView v : lot) {
+                Long userId = v.getUtilisateurId();
+                after = Math.max(after, userId);
+                // pas de remplissage : 100k soldes d'inactifs évinceraient les joueurs en ligne
+                Balance b = new Balance(v.getSolde(), v.getVersion());
+                balances.update(userId, cur -> cur == null ? null : (b.version() > cur.version() ? b : cur));
+                if (walletSseService.wantsUpdates(v.getEmail())) {
+                    notifierSolde(v.getEmail(), userId, v.getSolde(), v.getVersion());
+                }
+            }
+            total += lot.size();
+        }
+        return total;
+    }
+
+    /**
+     * Point unique d'écriture du solde : statement RETURNING dans la transaction courante
+     * (le statement journalise lui-même la mutation dans wallet_ledger). Hors transaction et si
+     * app.wallet.group-commit.enabled, la mutation passe par le commit groupé : dans une transaction
+     * de l'appelant, elle doit suivre son commit ou son rollback, elle reste donc sur sa connexion.
+     * Met le cache à jour et pousse le nouveau solde.
+     */
+    private WalletGroupCommitter.Applied appliquer(Long userId, long delta, long minRequired, String type,
+                                                   Supplier<Optional<WalletRepository.SoldeView>> statement) {
+        WalletGroupCommitter.Applied a;
+        if (groupCommit.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            a = groupCommit.submit(userId, delta, minRequired, type);
+        } else {
+            WalletRepository.SoldeView v = statement.get()
+                    .orElseThrow(() -> new IllegalArgumentException("Solde insuffisant"));
+            a = new WalletGroupCommitter.Applied(v.getSolde(), v.getVersion(), v.getEmail());
+        }
+        rafraichirCache(userId, a.solde(), a.version());
+        notifierSolde(a.email(), userId, a.solde(), a.version());
+        return a;
+    }
+
+    /** Pousse le nouveau solde une fois la transaction courante commitée (rien en cas de rollback). */
+    private void notifierSolde(String email, Long userId, long solde, long version) {
+        notifications.afterCommit(() -> walletSseService.sendBalanceUpdate(email, solde, userId, version));
     }
 
     @Transactional
@@ -56,6 +275,9 @@ public class WalletService {
         } catch (Exception ignore) {}
 
         walletRepo.deleteByUtilisateur(u);
+        invaliderCache(u.getId());
+        // les autres nœuds oublient aussi ce solde (un nouveau wallet repartira de la version 1)
+        notifierSolde(u.getEmail(), u.getId(), 0L, 0L);
     }
 
 }
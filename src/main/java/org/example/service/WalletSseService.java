@@ -1,22 +1,271 @@
 package org.example.service;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.service.bus.NotificationBus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Component
 public class WalletSseService {
-    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    /** Nombre de shards du registre (un verrou / une tâche de heartbeat par shard). */
+    private static final int SHARDS = 16;
+    /** Heartbeat toutes les 15s, réparti sur 15 crans d'une seconde (roue de hachage). */
+    private static final int WHEEL_TICKS = 15;
+    private static final long TICK_MS = 1000;
+    /** Événements gardés par utilisateur pour la reprise Last-Event-ID. */
+    private static final int RING_SIZE = 16;
+    /** Durée de conservation du tampon après la fermeture du dernier flux. */
+    private static final long RING_TTL_MS = 5 * 60 * 1000L;
+
+    /**
+     * Registre des flux, découpé en shards puis en crans de roue :
+     * un email tombe toujours dans le même (shard, cran), ce qui permet de ne réveiller
+     * qu'1/15e des flux par seconde au lieu de tous toutes les 15s.
+     * Les flux morts sont mis de côté et retirés en bloc à la fin de chaque passe.
+     */
+    private static final class Shard {
+        final int index;
+        @SuppressWarnings("unchecked")
+        final ConcurrentHashMap<String, List<SseEmitter>>[] slots = new ConcurrentHashMap[WHEEL_TICKS];
+        final ConcurrentLinkedQueue<Map.Entry<String, SseEmitter>> dead = new ConcurrentLinkedQueue<>();
+        final AtomicInteger connections = new AtomicInteger();
+        Timer writeLatency;
+
+        Shard(int index) {
+            this.index = index;
+            for (int i = 0; i < WHEEL_TICKS; i++) slots[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    /**
+     * Derniers soldes publiés pour un utilisateur (tampon circulaire), avec leur id d'événement.
+     * evictedUpTo : id le plus récent qu'on ne sait plus rejouer (sorti du tampon ou antérieur à sa création).
+     * Les publications et la reprise d'un flux se font sous le verrou du tampon, ce qui garantit
+     * que le rejeu part toujours avant les mises à jour plus récentes.
+     */
+    private static final class EventRing {
+        final long[] ids = new long[RING_SIZE];
+        final long[] soldes = new long[RING_SIZE];
+        int head;
+        int size;
+        long evictedUpTo;
+        long version; // incrémenté à chaque ajout : un instantané lu hors verrou n'est valable que s'il n'a pas bougé
+        volatile long detachedAtMs;
+
+        EventRing(long evictedUpTo) {
+            this.evictedUpTo = evictedUpTo;
+        }
+
+        void add(long id, long solde) {
+            int i = (head + size) % RING_SIZE;
+            if (size == RING_SIZE) {
+                evictedUpTo = ids[head];
+                head = (head + 1) % RING_SIZE;
+                i = (head + size - 1) % RING_SIZE;
+            } else {
+                size++;
+            }
+            ids[i] = id;
+            soldes[i] = solde;
+            version++;
+        }
+
+        /** Vrai si la reprise depuis last n'a rien à rejouer ni à renvoyer : il faut un instantané externe. */
+        boolean needsSnapshot(long last) {
+            return last < evictedUpTo && size == 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, EventRing> rings = new ConcurrentHashMap<>();
+    // ids croissants, y compris d'un redémarrage à l'autre (base = horloge)
+    private final AtomicLong eventIds = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * Message de solde sur le bus (id attribué par le nœud émetteur).
+     * userId/version servent au cache des soldes de chaque nœud (WalletService) ; version <= 0 : à invalider.
+     */
+    public record BalanceUpdate(String email, long solde, long id, Long userId, long version) {}
+
+    private final NotificationBus bus;
+    private final WalletStompService stomp;
+
+    /**
+     * Soldes en attente d'envoi, un par utilisateur : la dernière valeur gagne.
+     * Un thread dédié vide la map toutes les flushMs, les threads appelants ne touchent jamais aux sockets.
+     */
+    private record Pending(long id, long solde, long sinceNanos) {}
+
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final int maxPending;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "wallet-sse-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService wheel = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "wallet-sse-wheel");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService heartbeatPool;
+    private final AtomicInteger tick = new AtomicInteger();
+
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Counter delivered;
+    private final Counter reaped;
+    private final Counter replayed;
+    private final Counter snapshots;
+    private final Timer flushLatency;
+
+    public WalletSseService(@Value("${app.wallet.sse.flush-ms:50}") long flushMs,
+                            @Value("${app.wallet.sse.max-pending:100000}") int maxPending,
+                            @Value("${app.wallet.sse.heartbeat-threads:4}") int heartbeatThreads,
+                            NotificationBus bus,
+                            WalletStompService stomp,
+                            MeterRegistry meters) {
+        this.maxPending = maxPending;
+        this.bus = bus;
+        this.stomp = stomp;
+        this.coalesced = Counter.builder("wallet.sse.coalesced")
+                .description("Mises à jour de solde remplacées avant envoi").register(meters);
+        this.dropped = Counter.builder("wallet.sse.dropped")
+                .description("Mises à jour de solde abandonnées (file pleine ou flux fermé)").register(meters);
+        this.delivered = Counter.builder("wallet.sse.delivered").register(meters);
+        this.reaped = Counter.builder("wallet.sse.reaped")
+                .description("Flux morts retirés du registre").register(meters);
+        this.replayed = Counter.builder("wallet.sse.resume.replayed")
+                .description("Reconnexions servies par rejeu du tampon").register(meters);
+        this.snapshots = Counter.builder("wallet.sse.resume.snapshots")
+                .description("Reconnexions servies par un instantané").register(meters);
+        this.flushLatency = Timer.builder("wallet.sse.flush.latency")
+                .description("Délai entre la première mise à jour en attente et son envoi").register(meters);
+        Gauge.builder("wallet.sse.pending", pending, Map::size).register(meters);
+        Gauge.builder("wallet.sse.rings", rings, Map::size).register(meters);
+
+        for (int i = 0; i < SHARDS; i++) {
+            Shard s = new Shard(i);
+            String tag = Integer.toString(i);
+            Gauge.builder("wallet.sse.connections", s.connections, AtomicInteger::get)
+                    .tag("shard", tag).register(meters);
+            s.writeLatency = Timer.builder("wallet.sse.write.latency")
+                    .tag("shard", tag).register(meters);
+            shards[i] = s;
+        }
+
+        AtomicInteger n = new AtomicInteger();
+        this.heartbeatPool = Executors.newFixedThreadPool(heartbeatThreads, r -> {
+            Thread t = new Thread(r, "wallet-sse-hb-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        wheel.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        bus.subscribe(NotificationBus.WALLET, BalanceUpdate.class, this::onBalanceUpdate);
+    }
+
+    /**
+     * Id d'événement : max(compteur + 1, horloge) ; les ids vus des autres nœuds font avancer
+     * le compteur, ce qui garde les ids croissants quel que soit le nœud qui sert la reconnexion.
+     */
+    private long nextEventId() {
+        long now = System.currentTimeMillis() * 1000;
+        return eventIds.updateAndGet(c -> Math.max(c + 1, now));
+    }
+
+    private static int hash(String email) {
+        return email.hashCode() & 0x7fffffff;
+    }
+
+    private Shard shardOf(String email) {
+        return shards[hash(email) % SHARDS];
+    }
+
+    private static int slotOf(String email) {
+        return (hash(email) / SHARDS) % WHEEL_TICKS;
+    }
+
+    private List<SseEmitter> emittersOf(String email) {
+        return shardOf(email).slots[slotOf(email)].get(email);
+    }
 
     public SseEmitter register(String email) {
-        // 30 minutes : suffisant et plus réaliste que Long.MAX_VALUE derrière proxy
+        return register(email, null, () -> null);
+    }
+
+    /**
+     * Ouvre un flux. Si lastEventId est fourni (reconnexion), les mises à jour manquées sont
+     * rejouées depuis le tampon mémoire ; si elles n'y sont plus, un seul instantané est envoyé
+     * (dernier solde connu, ou snapshot fourni par l'appelant).
+     */
+    public SseEmitter register(String email, String lastEventId, Supplier<Long> snapshot) {
+        // 6 heures : le client se reconnecte de toute façon, plus réaliste que Long.MAX_VALUE derrière proxy
         SseEmitter emitter = new SseEmitter(6L * 60 * 60 * 1000L);
-        emitters.computeIfAbsent(email, k -> new CopyOnWriteArrayList<>()).add(emitter);
+        Shard shard = shardOf(email);
+        Long last = lastEventId == null ? null : parseEventId(lastEventId);
+
+        // l'instantané (lecture en base possible) est pris hors du verrou du tampon, puis n'est
+        // retenu que si le tampon n'a pas bougé entre-temps ; sinon on recommence
+        EventRing snapshotRing = null;
+        long snapshotVersion = 0;
+        Long solde = null;
+        while (true) {
+            EventRing ring = rings.computeIfAbsent(email, k -> new EventRing(eventIds.get()));
+            synchronized (ring) {
+                // tampon purgé entre-temps : on repart du nouveau
+                if (rings.get(email) != ring) continue;
+                boolean fresh = snapshotRing == ring && snapshotVersion == ring.version;
+                if (last == null || !ring.needsSnapshot(last) || fresh) {
+                    attach(shard, email, emitter, ring, last, solde);
+                    return emitter;
+                }
+                snapshotRing = ring;
+                snapshotVersion = ring.version;
+            }
+            solde = snapshot.get();
+        }
+    }
+
+    private static long parseEventId(String lastEventId) {
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // appelé sous le verrou du tampon, après vérification qu'il est toujours celui de l'utilisateur ;
+    // snapshot : solde lu pour ce tampon et cette version (null si aucun)
+    private void attach(Shard shard, String email, SseEmitter emitter, EventRing ring,
+                        Long last, Long snapshot) {
+        ring.detachedAtMs = 0;
+        shard.slots[slotOf(email)].compute(email, (k, list) -> {
+            if (list == null) list = new CopyOnWriteArrayList<>();
+            list.add(emitter);
+            return list;
+        });
+        shard.connections.incrementAndGet();
 
         emitter.onCompletion(() -> removeEmitter(email, emitter));
         emitter.onTimeout(() -> removeEmitter(email, emitter));
@@ -26,51 +275,238 @@ public class WalletSseService {
             emitter.send(SseEmitter.event().name("connected").data("ok"));
         } catch (IOException ignored) {}
 
-        return emitter;
+        if (last != null) replay(shard, email, emitter, ring, last, snapshot);
+    }
+
+    private void replay(Shard shard, String email, SseEmitter emitter, EventRing ring,
+                        long last, Long snapshot) {
+        if (last >= ring.evictedUpTo) {
+            for (int k = 0; k < ring.size; k++) {
+                int i = (ring.head + k) % RING_SIZE;
+                if (ring.ids[i] > last) write(shard, email, emitter, balanceEvent(ring.ids[i], ring.soldes[i]));
+            }
+            replayed.increment();
+            return;
+        }
+
+        // trou dans l'historique : un seul instantané suffit pour un solde
+        if (ring.size > 0) {
+            int i = (ring.head + ring.size - 1) % RING_SIZE;
+            write(shard, email, emitter, balanceEvent(ring.ids[i], ring.soldes[i]));
+        } else {
+            if (snapshot == null) return;
+            long id = nextEventId();
+            ring.add(id, snapshot);
+            write(shard, email, emitter, balanceEvent(id, snapshot));
+        }
+        snapshots.increment();
+    }
+
+    private static SseEmitter.SseEventBuilder balanceEvent(long id, long solde) {
+        return SseEmitter.event()
+                .id(Long.toString(id))
+                .name("wallet-update")
+                .data(Map.of("solde", solde));
+    }
+
+    /** Le dernier flux de l'utilisateur vient de se fermer : son tampon expirera après RING_TTL_MS. */
+    private void detached(String email) {
+        EventRing ring = rings.get(email);
+        if (ring != null) ring.detachedAtMs = System.currentTimeMillis();
+    }
+
+    // sous le verrou du tampon et seulement s'il est toujours associé à l'email :
+    // un register concurrent l'a soit déjà rattaché (detachedAtMs = 0), soit en reprendra un neuf
+    private void purgeRings() {
+        long limit = System.currentTimeMillis() - RING_TTL_MS;
+        for (Map.Entry<String, EventRing> e : rings.entrySet()) {
+            EventRing ring = e.getValue();
+            synchronized (ring) {
+                long at = ring.detachedAtMs;
+                if (at != 0 && at < limit && !isConnected(e.getKey())) rings.remove(e.getKey(), ring);
+            }
+        }
     }
 
     private void removeEmitter(String email, SseEmitter emitter) {
-        List<SseEmitter> list = emitters.get(email);
-        if (list != null) {
-            list.remove(emitter);
-            if (list.isEmpty()) emitters.remove(email);
+        Shard shard = shardOf(email);
+        shard.slots[slotOf(email)].computeIfPresent(email, (k, list) -> {
+            if (list.remove(emitter)) {
+                shard.connections.decrementAndGet();
+                reaped.increment();
+            }
+            return list.isEmpty() ? null : list;
+        });
+        if (!isConnected(email)) detached(email);
+    }
+
+    /** Note un flux en échec ; il sera retiré avec les autres à la fin de la passe. */
+    private void markDead(Shard shard, String email, SseEmitter emitter) {
+        shard.dead.add(Map.entry(email, emitter));
+    }
+
+    /** Retrait groupé des flux morts d'un shard. */
+    private void reap(Shard shard) {
+        if (shard.dead.isEmpty()) return;
+        Map<String, List<SseEmitter>> byEmail = new HashMap<>();
+        Map.Entry<String, SseEmitter> e;
+        while ((e = shard.dead.poll()) != null) {
+            byEmail.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getValue());
+        }
+        for (var entry : byEmail.entrySet()) {
+            List<SseEmitter> morts = entry.getValue();
+            shard.slots[slotOf(entry.getKey())].computeIfPresent(entry.getKey(), (k, list) -> {
+                int before = list.size();
+                list.removeAll(morts);
+                int removed = before - list.size();
+                if (removed > 0) {
+                    shard.connections.addAndGet(-removed);
+                    reaped.increment(removed);
+                }
+                return list.isEmpty() ? null : list;
+            });
+            if (!isConnected(entry.getKey())) detached(entry.getKey());
+            for (SseEmitter emitter : morts) {
+                try {
+                    emitter.complete();
+                } catch (Exception ignored) {
+                }
+            }
         }
     }
 
+    /** Écrit un événement sur un flux ; false (et flux marqué mort) si la socket est fermée. */
+    private boolean write(Shard shard, String email, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        long start = System.nanoTime();
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            markDead(shard, email, emitter);
+            return false;
+        } finally {
+            shard.writeLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Vrai si l'utilisateur a au moins un flux SSE ouvert sur ce nœud. */
+    public boolean isConnected(String email) {
+        List<SseEmitter> list = emittersOf(email);
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * Publie un nouveau solde sur le bus : chaque nœud le livre à ses propres flux.
+     * Les appelants n'ont besoin de publier que si wantsUpdates(email).
+     */
     public void sendBalanceUpdate(String email, long solde) {
-        List<SseEmitter> list = emitters.get(email);
-        if (list == null) return;
+        sendBalanceUpdate(email, solde, null, 0L);
+    }
 
-        for (SseEmitter emitter : list.toArray(new SseEmitter[0])) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("wallet-update")
-                        .data(Map.of("solde", solde)));
-            } catch (IOException e) {
-                removeEmitter(email, emitter);
+    public void sendBalanceUpdate(String email, long solde, Long userId, long version) {
+        bus.publish(NotificationBus.WALLET, new BalanceUpdate(email, solde, nextEventId(), userId, version));
+    }
+
+    /** Faux si on sait qu'aucun nœud n'a de flux récent pour cet utilisateur (bus local seulement). */
+    public boolean wantsUpdates(String email) {
+        return bus.isDistributed() || rings.containsKey(email) || stomp.isSubscribed(email);
+    }
+
+    /**
+     * Livraison locale. Non bloquant : l'événement est gardé dans le tampon de reprise,
+     * puis mis en attente et coalescé avec les précédents non encore envoyés.
+     * Rien n'est gardé pour les utilisateurs sans flux récent sur ce nœud ; les abonnés STOMP
+     * (/user/queue/wallet) passent par la même file, sans tampon de reprise.
+     */
+    private void onBalanceUpdate(BalanceUpdate update) {
+        eventIds.accumulateAndGet(update.id(), Math::max);
+        String email = update.email();
+        long solde = update.solde();
+        EventRing ring = rings.get(email);
+        if (ring == null) {
+            if (stomp.isSubscribed(email)) enqueue(email, update.id(), solde);
+            return;
+        }
+
+        synchronized (ring) {
+            ring.add(update.id(), solde);
+            if (isConnected(email) || stomp.isSubscribed(email)) enqueue(email, update.id(), solde);
+        }
+    }
+
+    private void enqueue(String email, long id, long solde) {
+        long now = System.nanoTime();
+        Pending prev = pending.get(email);
+        if (prev == null && pending.size() >= maxPending) {
+            dropped.increment();
+            return;
+        }
+        prev = pending.put(email, new Pending(id, solde, prev != null ? prev.sinceNanos() : now));
+        if (prev != null) coalesced.increment();
+    }
+
+    private void flush() {
+        try {
+            for (String email : pending.keySet()) {
+                Pending p = pending.remove(email);
+                if (p == null) continue;
+                Shard shard = shardOf(email);
+                List<SseEmitter> list = shard.slots[slotOf(email)].get(email);
+                boolean viaStomp = stomp.isSubscribed(email);
+                if ((list == null || list.isEmpty()) && !viaStomp) {
+                    dropped.increment();
+                    continue;
+                }
+                if (viaStomp) {
+                    stomp.send(email, p.solde());
+                    delivered.increment();
+                }
+                if (list == null) list = List.of();
+                for (SseEmitter emitter : list.toArray(new SseEmitter[0])) {
+                    if (write(shard, email, emitter, balanceEvent(p.id(), p.solde()))) {
+                        delivered.increment();
+                    }
+                }
+                flushLatency.record(System.nanoTime() - p.sinceNanos(), TimeUnit.NANOSECONDS);
             }
+            for (Shard shard : shards) reap(shard);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
-    // Heartbeat toutes les 15s pour garder le flux ouvert derrière Nginx/proxies
-    @Scheduled(fixedDelay = 15000)
-    public void heartbeat() {
-        for (var entry : emitters.entrySet()) {
-            String email = entry.getKey();
-            for (SseEmitter emitter : entry.getValue().toArray(new SseEmitter[0])) {
-                try {
-                    emitter.send(SseEmitter.event().name("ping").data("keepalive"));
-                } catch (IOException e) {
-                    removeEmitter(email, emitter);
+    /** Un cran de roue : chaque shard envoie les pings de son cran courant sur le pool dédié. */
+    private void tick() {
+        int slot = Math.floorMod(tick.getAndIncrement(), WHEEL_TICKS);
+        if (slot == 0) heartbeatPool.execute(this::purgeRings);
+        for (Shard shard : shards) {
+            if (shard.slots[slot].isEmpty() && shard.dead.isEmpty()) continue;
+            heartbeatPool.execute(() -> heartbeat(shard, slot));
+        }
+    }
+
+    // Heartbeat pour garder le flux ouvert derrière Nginx/proxies
+    private void heartbeat(Shard shard, int slot) {
+        try {
+            for (var entry : shard.slots[slot].entrySet()) {
+                String email = entry.getKey();
+                for (SseEmitter emitter : entry.getValue().toArray(new SseEmitter[0])) {
+                    write(shard, email, emitter, SseEmitter.event().name("ping").data("keepalive"));
                 }
             }
+            reap(shard);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
     /** Ferme tous les SSE d’un utilisateur (utilisé avant suppression) */
     public void complete(String email) {
-        List<SseEmitter> list = emitters.remove(email);
+        Shard shard = shardOf(email);
+        rings.remove(email);
+        List<SseEmitter> list = shard.slots[slotOf(email)].remove(email);
         if (list == null) return;
+        shard.connections.addAndGet(-list.size());
 
         for (SseEmitter emitter : list) {
             try {
@@ -80,4 +516,11 @@ public class WalletSseService {
             }
         }
     }
+
+    @PreDestroy
+    void shutdown() {
+        wheel.shutdown();
+        flusher.shutdown();
+        heartbeatPool.shutdown();
+    }
 }
@@ -0,0 +1,84 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Soldes poussés sur la session STOMP existante (/user/queue/wallet), en alternative au flux SSE.
+ * Opt-in côté client : il suffit de s'abonner à /user/queue/wallet, le flux /api/wallet/stream
+ * devient alors inutile. On suit les abonnements pour ne publier qu'aux utilisateurs abonnés.
+ */
+@Service
+public class WalletStompService {
+
+    public static final String DESTINATION = "/queue/wallet";
+    private static final String USER_DESTINATION = "/user" + DESTINATION;
+
+    private final SimpMessagingTemplate broker;
+
+    // sessionId -> (subscriptionId -> email)
+    private final Map<String, Map<String, String>> bySession = new ConcurrentHashMap<>();
+    // email -> nombre d'abonnements actifs
+    private final Map<String, AtomicInteger> subscribers = new ConcurrentHashMap<>();
+
+    public WalletStompService(SimpMessagingTemplate broker, MeterRegistry meters) {
+        this.broker = broker;
+        Gauge.builder("wallet.stomp.subscribers", subscribers, Map::size)
+                .description("Utilisateurs recevant leur solde par STOMP").register(meters);
+    }
+
+    public boolean isSubscribed(String email) {
+        return subscribers.containsKey(email);
+    }
+
+    /** Même payload que l'événement SSE wallet-update. */
+    public void send(String email, long solde) {
+        broker.convertAndSendToUser(email, DESTINATION, Map.of("solde", solde));
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent e) {
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(e.getMessage());
+        Principal p = acc.getUser();
+        if (p == null || !USER_DESTINATION.equals(acc.getDestination())) return;
+
+        String email = p.getName();
+        String previous = bySession.computeIfAbsent(acc.getSessionId(), k -> new ConcurrentHashMap<>())
+                .put(acc.getSubscriptionId(), email);
+        if (previous == null) {
+            subscribers.computeIfAbsent(email, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent e) {
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(e.getMessage());
+        Map<String, String> subs = bySession.get(acc.getSessionId());
+        if (subs == null) return;
+        String email = subs.remove(acc.getSubscriptionId());
+        if (email != null) release(email);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        Map<String, String> subs = bySession.remove(e.getSessionId());
+        if (subs == null) return;
+        for (String email : subs.values()) release(email);
+    }
+
+    private void release(String email) {
+        subscribers.computeIfPresent(email, (k, c) -> c.decrementAndGet() <= 0 ? null : c);
+    }
+}
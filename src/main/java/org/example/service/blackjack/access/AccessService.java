@@ -6,6 +6,9 @@ import org.example.dto.blackjack.TableEvent;
 import org.example.model.Utilisateur;
 import org.example.model.blackjack.BjTable;
 import org.example.repo.UtilisateurRepository;
+import org.example.service.NotificationDispatcher;
+import org.example.service.bus.NotificationBus;
+import jakarta.annotation.PostConstruct;
 import org.example.service.blackjack.registry.TableRegistry;
 import org.example.service.blackjack.util.Payloads;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -22,12 +25,35 @@ public class AccessService {
     private final UtilisateurRepository utilisateurRepo;
     private final SimpMessagingTemplate broker;
     private final Payloads payloads;
+    private final NotificationDispatcher notifications;
+    private final NotificationBus bus;
+
+    /** Événement de table sur le bus ; allowed : destinataires d'une table privée (figés à l'émission). */
+    public record TableBroadcast(Long tableId, boolean privee, Set<String> allowed, TableEvent event) {}
 
     // email -> table créée
     private final Map<String, Long> createdBy = new ConcurrentHashMap<>();
     // tableId -> emails autorisés (accès privé)
     private final Map<Long, Set<String>> privateAccess = new ConcurrentHashMap<>();
 
+    @PostConstruct
+    void abonnerBus() {
+        bus.subscribe(NotificationBus.TABLE, TableBroadcast.class, this::deliver);
+    }
+
+    /** Livraison locale d'un événement de table aux sessions STOMP de ce nœud. */
+    private void deliver(TableBroadcast b) {
+        if (!b.privee()) {
+            // public: topic global
+            broker.convertAndSend("/topic/bj/table/" + b.tableId(), b.event());
+        } else {
+            // privé: strictement les autorisés
+            for (String em : b.allowed()) {
+                broker.convertAndSendToUser(em, "/queue/bj/table/" + b.tableId(), b.event());
+            }
+        }
+    }
+
     /* --- appelé au boot si tu restaures des tables --- */
     public void registerCreatorLock(BjTable t) {
         if (t.getCreatorEmail() != null) {
@@ -129,16 +155,9 @@ public class AccessService {
                 .payload(payload)
                 .build();
 
-        if (!t.isPrivate()) {
-            // public: topic global
-            broker.convertAndSend("/topic/bj/table/" + t.getId(), evt);
-        } else {
-            // privé: strictement les autorisés
-            Set<String> allowed = allowedFor(t);
-            for (String em : allowed) {
-                broker.convertAndSendToUser(em, "/queue/bj/table/" + t.getId(), evt);
-            }
-        }
+        Set<String> allowed = t.isPrivate() ? allowedFor(t) : Set.of();
+        var broadcast = new TableBroadcast(t.getId(), t.isPrivate(), allowed, evt);
+        notifications.afterCommit(() -> bus.publish(NotificationBus.TABLE, broadcast));
     }
 
     public void onTableClosed(BjTable t, String ownerEmail) {
@@ -33,7 +33,7 @@ public class ActionService {
             case DOUBLE -> {
                 long add = seat.getHand().getBet();
                 Utilisateur u = users.findByEmail(email).orElseThrow();
-                wallet.debiter(u, add);
+                wallet.debiterSolde(u.getId(), add);
                 seat.getHand().setBet(seat.getHand().getBet() + add);
                 seat.getHand().add(t.getShoe().draw());
                 seat.getHand().setStanding(true);
@@ -43,9 +43,9 @@ public class PayoutService {
             // 1 seul lookup utilisateur
             Utilisateur u = users.findByEmail(s.getEmail()).orElse(null);
 
-            // Paiement (si utilisateur trouvé)
+            // Paiement (si utilisateur trouvé) : crédit atomique par id
             if (credit > 0 && u != null) {
-                try { wallet.crediter(u, credit); }
+                try { wallet.crediterSolde(u.getId(), credit); }
                 catch (Exception ex) { /* log.warn si tu veux */ }
             }
 
@@ -47,9 +47,9 @@ public class RoundEngine {
                 try {
                     Long uid = s.getUserId();
                     if (uid != null) {
-                        users.findById(uid).ifPresent(u -> wallet.debiter(u, s.getHand().getBet()));
+                        wallet.debiterSolde(uid, s.getHand().getBet());
                     } else {
-                        users.findByEmail(s.getEmail()).ifPresent(u -> wallet.debiter(u, s.getHand().getBet()));
+                        users.findByEmail(s.getEmail()).ifPresent(u -> wallet.debiterSolde(u.getId(), s.getHand().getBet()));
                     }
                 } catch (Exception ex) {
                     s.getHand().setBet(0);
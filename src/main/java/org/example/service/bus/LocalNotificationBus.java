@@ -0,0 +1,37 @@
+package org.example.service.bus;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/** Bus mono-nœud : livraison directe et synchrone aux abonnés du JVM. */
+@Component
+@ConditionalOnProperty(name = "app.bus.type", havingValue = "local", matchIfMissing = true)
+public class LocalNotificationBus implements NotificationBus {
+
+    private final Map<String, List<Consumer<Object>>> handlers = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(String channel, Object message) {
+        List<Consumer<Object>> list = handlers.get(channel);
+        if (list == null) return;
+        for (Consumer<Object> h : list) {
+            try {
+                h.accept(message);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public <T> void subscribe(String channel, Class<T> type, Consumer<T> handler) {
+        handlers.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>())
+                .add(m -> handler.accept(type.cast(m)));
+    }
+}
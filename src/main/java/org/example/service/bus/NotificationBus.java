@@ -0,0 +1,28 @@
+package org.example.service.bus;
+
+import java.util.function.Consumer;
+
+/**
+ * Bus de notifications entre nœuds.
+ * Un message publié est livré aux abonnés du canal sur tous les nœuds, y compris le nœud émetteur
+ * (chaque nœud pousse ensuite sur ses propres sockets SSE / STOMP).
+ * Implémentation choisie par app.bus.type : local (défaut, un seul JVM) ou postgres (LISTEN/NOTIFY).
+ */
+public interface NotificationBus {
+
+    String WALLET = "wallet";
+    String CHAT = "chat";
+    String TABLE = "bj-table";
+    String MODERATION = "chat-moderation";
+
+    /** Publie un message ; il est figé (sérialisé si besoin) avant le retour de l'appel. */
+    void publish(String channel, Object message);
+
+    /** Abonne un handler ; les messages venant d'autres nœuds sont désérialisés en type. */
+    <T> void subscribe(String channel, Class<T> type, Consumer<T> handler);
+
+    /** Vrai si les messages atteignent d'autres nœuds (un abonné local ne voit alors pas tout). */
+    default boolean isDistributed() {
+        return false;
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.service.bus;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bus multi-nœuds sur Postgres LISTEN/NOTIFY.
+ * - livraison locale immédiate (comme LocalNotificationBus), puis envoi aux autres nœuds ;
+ * - les messages sont regroupés par un thread d'envoi dans des NOTIFY de moins de 8000 octets
+ *   (limite Postgres) : {"n":nœud,"m":[{"c":canal,"p":json},...]} ;
+ * - un thread d'écoute (connexion dédiée) relaie les NOTIFY des autres nœuds aux abonnés,
+ *   ceux du nœud lui-même sont ignorés (déjà livrés).
+ * Best effort : un message perdu pendant une reconnexion n'est pas rejoué.
+ */
+@Component
+@ConditionalOnProperty(name = "app.bus.type", havingValue = "postgres")
+public class PgNotificationBus implements NotificationBus {
+
+    private static final String PG_CHANNEL = "casino_bus";
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final int MAX_QUEUED = 100_000;
+
+    private record Handler<T>(Class<T> type, Consumer<T> consumer) {}
+
+    private record Outgoing(String channel, String json, int bytes) {}
+
+    private final DataSource dataSource;
+    private final ObjectMapper mapper;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final Map<String, List<Handler<?>>> handlers = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Outgoing> outbox = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private final long batchWindowMs;
+    private volatile boolean running = true;
+    private Thread sender;
+    private Thread listener;
+
+    private final Counter published;
+    private final Counter received;
+    private final Counter dropped;
+    private final DistributionSummary batchSize;
+    private final Timer notifyLatency;
+
+    public PgNotificationBus(DataSource dataSource, ObjectMapper mapper,
+                             @Value("${app.bus.batch-window-ms:5}") long batchWindowMs,
+                             MeterRegistry meters) {
+        this.dataSource = dataSource;
+        this.mapper = mapper;
+        this.batchWindowMs = batchWindowMs;
+        this.published = Counter.builder("bus.published").tag("type", "postgres").register(meters);
+        this.received = Counter.builder("bus.received").tag("type", "postgres")
+                .description("Messages reçus des autres nœuds").register(meters);
+        this.dropped = Counter.builder("bus.dropped").tag("type", "postgres")
+                .description("Messages non diffusés (file pleine, trop gros, erreur SQL)").register(meters);
+        this.batchSize = DistributionSummary.builder("bus.notify.batch.size")
+                .description("Messages par NOTIFY").register(meters);
+        this.notifyLatency = Timer.builder("bus.notify.latency").register(meters);
+        Gauge.builder("bus.outbox", outbox, LinkedBlockingQueue::size).register(meters);
+    }
+
+    @PostConstruct
+    void start() {
+        sender = new Thread(this::sendLoop, "bus-pg-send");
+        sender.setDaemon(true);
+        sender.start();
+        listener = new Thread(this::listenLoop, "bus-pg-listen");
+        listener.setDaemon(true);
+        listener.start();
+        System.out.println("🔔 Bus Postgres démarré (nœud " + nodeId + ")");
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (sender != null) sender.interrupt();
+        if (listener != null) listener.interrupt();
+    }
+
+    @Override
+    public void publish(String channel, Object message) {
+        deliverLocal(channel, message);
+
+        String json;
+        try {
+            json = mapper.writeValueAsString(message);
+        } catch (Exception e) {
+            e.printStackTrace();
+            dropped.increment();
+            return;
+        }
+        int bytes = json.getBytes(StandardCharsets.UTF_8).length;
+        if (bytes + channel.length() + 64 > MAX_PAYLOAD_BYTES) {
+            System.out.println("⚠️ Bus : message trop gros pour NOTIFY (" + bytes + " octets, canal " + channel + ")");
+            dropped.increment();
+            return;
+        }
+        if (!outbox.offer(new Outgoing(channel, json, bytes))) {
+            dropped.increment();
+            return;
+        }
+        published.increment();
+    }
+
+    @Override
+    public <T> void subscribe(String channel, Class<T> type, Consumer<T> handler) {
+        handlers.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(new Handler<>(type, handler));
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverLocal(String channel, Object message) {
+        List<Handler<?>> list = handlers.get(channel);
+        if (list == null) return;
+        for (Handler<?> h : list) {
+            try {
+                ((Consumer<Object>) h.consumer()).accept(h.type().cast(message));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverRemote(String channel, JsonNode payload) {
+        List<Handler<?>> list = handlers.get(channel);
+        if (list == null) return;
+        for (Handler<?> h : list) {
+            try {
+                Object msg = mapper.treeToValue(payload, h.type());
+                ((Consumer<Object>) h.consumer()).accept(msg);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // ---------- envoi ----------
+
+    private void sendLoop() {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        List<Outgoing> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Outgoing first = outbox.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                // petite fenêtre pour regrouper les rafales dans le même NOTIFY
+                if (batchWindowMs > 0) Thread.sleep(batchWindowMs);
+                batch.add(first);
+                outbox.drainTo(batch, 1000);
+
+                if (conn == null || conn.isClosed()) {
+                    conn = dataSource.getConnection();
+                    conn.setAutoCommit(true);
+                    ps = conn.prepareStatement("select pg_notify(?, ?)");
+                }
+                sendBatch(ps, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                System.out.println("⚠️ Bus : NOTIFY en échec, " + batch.size() + " message(s) perdus : " + e.getMessage());
+                dropped.increment(batch.size());
+                closeQuietly(conn);
+                conn = null;
+            } finally {
+                batch.clear();
+            }
+        }
+        closeQuietly(conn);
+    }
+
+    private void sendBatch(PreparedStatement ps, List<Outgoing> batch) throws SQLException {
+        StringBuilder sb = null;
+        int size = 0;
+        int count = 0;
+        for (Outgoing o : batch) {
+            int entry = o.bytes() + o.channel().length() + 16;
+            if (sb != null && size + entry > MAX_PAYLOAD_BYTES) {
+                notify(ps, sb, count);
+                sb = null;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(MAX_PAYLOAD_BYTES).append("{\"n\":\"").append(nodeId).append("\",\"m\":[");
+                size = sb.length() + 2;
+                count = 0;
+            } else {
+                sb.append(',');
+            }
+            sb.append("{\"c\":\"").append(o.channel()).append("\",\"p\":").append(o.json()).append('}');
+            size += entry;
+            count++;
+        }
+        if (sb != null) notify(ps, sb, count);
+    }
+
+    private void notify(PreparedStatement ps, StringBuilder sb, int count) throws SQLException {
+        sb.append("]}");
+        long start = System.nanoTime();
+        ps.setString(1, PG_CHANNEL);
+        ps.setString(2, sb.toString());
+        ps.executeQuery().close();
+        notifyLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(count);
+    }
+
+    // ---------- écoute ----------
+
+    private void listenLoop() {
+        while (running) {
+            Connection conn = null;
+            try {
+                conn = dataSource.getConnection();
+                conn.setAutoCommit(true);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + PG_CHANNEL);
+                }
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(500);
+                    if (notifications == null) continue;
+                    for (PGNotification n : notifications) handle(n.getParameter());
+                }
+            } catch (SQLException e) {
+                if (!running) break;
+                System.out.println("⚠️ Bus : écoute interrompue, reconnexion : " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } finally {
+                closeQuietly(conn);
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        try {
+            JsonNode root = mapper.readTree(payload);
+            if (nodeId.equals(root.path("n").asText())) return; // déjà livré localement
+            for (JsonNode m : root.path("m")) {
+                received.increment();
+                deliverRemote(m.path("c").asText(), m.get("p"));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.service.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU borné, découpé en segments verrouillés indépendamment (lock striping).
+ * Chaque segment est un LinkedHashMap en ordre d'accès qui évince son plus ancien élément
+ * au-delà de sa part de la capacité. Compteurs hit/miss/eviction pour les métriques.
+ */
+public class StripedLruCache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Segment<SK, SV> extends LinkedHashMap<SK, SV> {
+        private final int max;
+        private final LongAdder evictions;
+
+        Segment(int max, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.max = max;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SK, SV> eldest) {
+            if (size() > max) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public StripedLruCache(int maxSize, int stripes) {
+        int n = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1; // puissance de 2 >= stripes
+        this.segments = new Segment[n];
+        this.mask = n - 1;
+        int perSegment = Math.max(1, maxSize / n);
+        for (int i = 0; i < n; i++) segments[i] = new Segment<>(perSegment, evictions);
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & mask];
+    }
+
+    /** Lecture comptabilisée (hit/miss). */
+    public V get(K key) {
+        Segment<K, V> s = segmentFor(key);
+        V v;
+        synchronized (s) { v = s.get(key); }
+        if (v != null) hits.increment(); else misses.increment();
+        return v;
+    }
+
+    /** Lecture sans chargement ni comptage hit/miss (ex. mise à jour d'une entrée déjà en cache). */
+    public V getIfPresent(K key) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) { return s.get(key); }
+    }
+
+    /** Lecture, et chargement via loader en cas d'absence (loader appelé hors verrou). */
+    public V get(K key, Function<K, V> loader) {
+        V v = get(key);
+        if (v != null) return v;
+        V loaded = loader.apply(key);
+        if (loaded == null) return null;
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            V current = s.get(key);
+            if (current != null) return current; // chargé ou mis à jour entre-temps
+            s.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) { s.put(key, value); }
+    }
+
+    /** Remplace la valeur sous le verrou du segment (current peut être null ; renvoyer null supprime). */
+    public V update(K key, UnaryOperator<V> fn) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) {
+            V next = fn.apply(s.get(key));
+            if (next == null) s.remove(key); else s.put(key, next);
+            return next;
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> s = segmentFor(key);
+        synchronized (s) { s.remove(key); }
+    }
+
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            synchronized (s) { s.clear(); }
+        }
+    }
+
+    public long size() {
+        long n = 0;
+        for (Segment<K, V> s : segments) {
+            synchronized (s) { n += s.size(); }
+        }
+        return n;
+    }
+
+    public long hitCount() { return hits.sum(); }
+    public long missCount() { return misses.sum(); }
+    public long evictionCount() { return evictions.sum(); }
+
+    public double hitRatio() {
+        long h = hits.sum(), m = misses.sum();
+        return (h + m) == 0 ? 0.0 : (double) h / (h + m);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.ChatEvent;
+import org.example.dto.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Fenêtre adaptative et contenu des trames. Le thread de diffusion est remplacé par une exécution
+ * immédiate, et les fermetures de fenêtre sont déclenchées à la main : aucune dépendance à l'horloge.
+ */
+class ChatBroadcasterTest {
+
+    private final SimpMessagingTemplate broker = mock(SimpMessagingTemplate.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    // fermetures de fenêtre programmées, avec leur délai
+    private final ArrayDeque<Runnable> closes = new ArrayDeque<>();
+    private final List<Long> delays = new ArrayList<>();
+    private long nextId = 1;
+
+    private ChatBroadcaster broadcaster(boolean enabled) {
+        ChatBroadcaster b = new ChatBroadcaster(broker, enabled, 20, 250, meters);
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(b, "executor")).shutdownNow();
+        ScheduledExecutorService inline = mock(ScheduledExecutorService.class);
+        doAnswer(inv -> {
+            inv.<Runnable>getArgument(0).run();
+            return null;
+        }).when(inline).execute(any());
+        doAnswer(inv -> {
+            closes.add(inv.getArgument(0));
+            delays.add(inv.getArgument(1));
+            return null;
+        }).when(inline).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        ReflectionTestUtils.setField(b, "executor", inline);
+        return b;
+    }
+
+    private ChatEvent message() {
+        ChatMessage m = new ChatMessage();
+        m.setId(nextId++);
+        m.setPseudo("p");
+        m.setContenu("message " + m.getId());
+        ChatEvent e = new ChatEvent();
+        e.setType(ChatEvent.Type.MESSAGE);
+        e.setMessage(m);
+        return e;
+    }
+
+    private List<ChatEvent> frames() {
+        ArgumentCaptor<ChatEvent> captor = ArgumentCaptor.forClass(ChatEvent.class);
+        verify(broker, atLeast(0)).convertAndSend(eq(ChatBroadcaster.TOPIC), captor.capture());
+        return captor.getAllValues();
+    }
+
+    private double window() {
+        return meters.get("chat.broadcast.window.ms").gauge().value();
+    }
+
+    private void closeWindow() {
+        closes.poll().run();
+    }
+
+    @Test
+    void sansRegroupementUneTrameParEvenement() {
+        ChatBroadcaster b = broadcaster(false);
+        for (int i = 0; i < 5; i++) b.send(message());
+        assertThat(frames()).hasSize(5).allMatch(f -> f.getType() == ChatEvent.Type.MESSAGE);
+        assertThat(closes).isEmpty();
+    }
+
+    @Test
+    void premierMessageImmediatPuisRafaleEnUnSeulBatch() {
+        ChatBroadcaster b = broadcaster(true);
+        b.send(message());
+        // chat calme : envoyé tout de suite, en MESSAGE, et une fenêtre de 20 ms s'ouvre
+        assertThat(frames()).hasSize(1);
+        assertThat(frames().get(0).getType()).isEqualTo(ChatEvent.Type.MESSAGE);
+        assertThat(frames().get(0).getMessage().getId()).isEqualTo(1L);
+        assertThat(delays).containsExactly(20L);
+
+        for (int i = 0; i < 3; i++) b.send(message());
+        assertThat(frames()).hasSize(1); // en attente jusqu'à la fin de la fenêtre
+
+        closeWindow();
+        ChatEvent batch = frames().get(1);
+        assertThat(batch.getType()).isEqualTo(ChatEvent.Type.BATCH);
+        assertThat(batch.getMessages()).extracting(ChatMessage::getId).containsExactly(2L, 3L, 4L);
+        assertThat(batch.getMessage()).isNull();
+
+        // un seul message dans la fenêtre suivante : trame MESSAGE, pas un BATCH d'un élément
+        b.send(message());
+        closeWindow();
+        assertThat(frames().get(2).getType()).isEqualTo(ChatEvent.Type.MESSAGE);
+        assertThat(frames().get(2).getMessage().getId()).isEqualTo(5L);
+
+        // fenêtre vide : retour au direct, plus rien de programmé
+        closeWindow();
+        assertThat(closes).isEmpty();
+        b.send(message());
+        assertThat(frames()).hasSize(4);
+    }
+
+    @Test
+    void laFenetreDoubleSousRafaleJusquA250PuisRedescendA20() {
+        ChatBroadcaster b = broadcaster(true);
+        b.send(message());
+        assertThat(window()).isEqualTo(20);
+        // rafales soutenues (>= 8 messages par fenêtre) : 20 -> 40 -> 80 -> 160 -> 250 (plafond)
+        for (int k = 0; k < 5; k++) {
+            for (int i = 0; i < 10; i++) b.send(message());
+            closeWindow();
+        }
+        assertThat(window()).isEqualTo(250);
+        assertThat(delays).containsExactly(20L, 40L, 80L, 160L, 250L, 250L);
+
+        // trafic retombé (0 ou 1 message par fenêtre) : la fenêtre est divisée par deux jusqu'au plancher
+        b.send(message());
+        closeWindow();   // 1 message : 125
+        closeWindow();   // vide : 62, puis retour au direct
+        assertThat(window()).isEqualTo(62);
+        assertThat(closes).isEmpty();
+        for (int k = 0; k < 3; k++) {
+            b.send(message()); // direct, ouvre une fenêtre
+            closeWindow();     // vide : 31, 20, 20
+        }
+        assertThat(window()).isEqualTo(20);
+
+        // chaque message est parti une et une seule fois, dans l'ordre
+        List<Long> ids = new ArrayList<>();
+        for (ChatEvent f : frames()) {
+            if (f.getType() == ChatEvent.Type.BATCH) f.getMessages().forEach(m -> ids.add(m.getId()));
+            else ids.add(f.getMessage().getId());
+        }
+        assertThat(ids).isSorted().doesNotHaveDuplicates().hasSize((int) nextId - 1);
+        assertThat(meters.counter("chat.broadcast.messages").count()).isEqualTo(nextId - 1);
+    }
+
+    @Test
+    void deleteEtClearVidentLeLotAvantDePartir() {
+        ChatBroadcaster b = broadcaster(true);
+        b.send(message());
+        b.send(message());
+        b.send(message());
+        ChatEvent delete = new ChatEvent();
+        delete.setType(ChatEvent.Type.DELETE);
+        delete.setId(2L);
+        b.send(delete);
+
+        List<ChatEvent> f = frames();
+        assertThat(f).extracting(ChatEvent::getType)
+                .containsExactly(ChatEvent.Type.MESSAGE, ChatEvent.Type.BATCH, ChatEvent.Type.DELETE);
+        assertThat(f.get(1).getMessages()).extracting(ChatMessage::getId).containsExactly(2L, 3L);
+        assertThat(f.get(2).getId()).isEqualTo(2L);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Coût du filtrage d'un message de 128 caractères selon le nombre de mots interdits :
+ * automate contre l'ancien filtre (une regex par mot, précompilée ici pour ne mesurer que la recherche).
+ * Lancement : main ci-dessous depuis l'IDE, ou
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.example.service.ChatModerationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatModerationBenchmark {
+
+    @Param({"13", "1000", "5000"})
+    int words;
+
+    private ChatModerationService.Automaton automaton;
+    private Pattern[] patterns;
+    private String message;
+
+    @Setup
+    public void setUp() {
+        Random rnd = new Random(7);
+        List<String> mots = new ArrayList<>(ChatModerationService.DEFAULT_WORDS);
+        while (mots.size() < words) {
+            StringBuilder sb = new StringBuilder();
+            int len = 3 + rnd.nextInt(8);
+            for (int i = 0; i < len; i++) sb.append((char) ('a' + rnd.nextInt(26)));
+            mots.add(sb.toString());
+        }
+        automaton = ChatModerationService.Automaton.of(mots);
+        patterns = mots.stream().map(m -> Pattern.compile("(?i)\\b" + m + "\\b")).toArray(Pattern[]::new);
+        message = "Salut tout le monde, quelle partie de roulette ce soir ! Franchement ce croupier est un bouffon, "
+                + "j'ai encore perdu, merde alors.";
+    }
+
+    @Benchmark
+    public String automate() {
+        return automaton.sanitize(message);
+    }
+
+    @Benchmark
+    public String regexParMot() {
+        String texte = message;
+        for (Pattern p : patterns) texte = p.matcher(texte).replaceAll("***");
+        return texte;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ChatModerationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Automate du filtre comparé à l'ancien filtre par regex (un replaceAll "(?i)\bmot\b" par mot) :
+ * mêmes sorties sur la liste par défaut, et écarts voulus documentés.
+ */
+class ChatModerationServiceTest {
+
+    private static final ChatModerationService.Automaton DEFAULT =
+            ChatModerationService.Automaton.of(ChatModerationService.DEFAULT_WORDS);
+
+    /** Ancien ChatService.sanitizeMessage. */
+    static String regex(List<String> mots, String texte) {
+        for (String bad : mots) {
+            texte = texte.replaceAll("(?i)\\b" + bad + "\\b", "***");
+        }
+        return texte;
+    }
+
+    private static void assertSameAsRegex(String texte) {
+        assertThat(DEFAULT.sanitize(texte))
+                .as("texte : %s", texte)
+                .isEqualTo(regex(ChatModerationService.DEFAULT_WORDS, texte));
+    }
+
+    @Test
+    void memesSortiesQueLaRegexSurUnCorpusVarie() {
+        List<String> corpus = List.of(
+                "", "bonjour", "fdp", "FDP", "Fdp !", "(ntm)", "tg.", "espèce de bouffon, va",
+                "merdeux", "emmerde", "merde_", "_merde", "merde2", "2merde", "merde-merde", "merde--merde",
+                "pd pd pd", "pdpd", "l'enculé", "enculés", "enculé!", "éfdp", "fdpé", "àntm", "ntmà",
+                "chienne\tchienne\nchienne", "batard?batard", "nique-toi", "niquer", "t'es un connard.",
+                "salope😀", "😀salope", "𝐀fdp", "fdp𝐀", "ça va ? merde alors", "MeRdE", "connardconnard",
+                "fdp ntm tg pd", "  pute  ", "pute's", "«merde»", "merde…", "1 000 merdes", "tg_tg", "tg/tg");
+        corpus.forEach(ChatModerationServiceTest::assertSameAsRegex);
+    }
+
+    @Test
+    void memesSortiesQueLaRegexSurDesMessagesAleatoires() {
+        // fragments de mots, séparateurs, lettres accentuées (minuscules : la regex (?i) ne replie que l'ASCII)
+        String[] pieces = {"fdp", "ntm", "pute", "connard", "salope", "enculé", "batard", "tg", "nique",
+                "merde", "pd", "bouffon", "chienne", "FDP", "Merde", "TG", "a", "e", "é", "è", "à", "ç", "x",
+                "1", "_", " ", " ", ",", ".", "!", "'", "-", "\n", "😀", "𝐀"};
+        Random rnd = new Random(42);
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder sb = new StringBuilder();
+            int k = 1 + rnd.nextInt(12);
+            for (int i = 0; i < k; i++) sb.append(pieces[rnd.nextInt(pieces.length)]);
+            assertSameAsRegex(sb.toString());
+        }
+    }
+
+    @Test
+    void motsQuiSeChevauchent() {
+        ChatModerationService.Automaton a = ChatModerationService.Automaton.of(List.of("ab", "abc", "bc", "ab c", "c d", "d"));
+        assertThat(a.sanitize("abc")).isEqualTo("***");
+        assertThat(a.sanitize("ab bc")).isEqualTo("*** ***");
+        assertThat(a.sanitize("xabc")).isEqualTo("xabc");
+        assertThat(a.sanitize("abc d")).isEqualTo("*** ***"); // "c d" collé à b : seul "d" est masqué
+        assertThat(a.sanitize("ab c d")).isEqualTo("***");    // "ab c" et "c d" se recouvrent : fusionnés
+        assertThat(a.sanitize("ab d")).isEqualTo("*** ***");
+    }
+
+    @Test
+    void ecartsVoulusAvecLaRegex() {
+        // casse repliée hors ASCII : la regex (?i) laissait passer ENCULÉ
+        assertThat(DEFAULT.sanitize("ENCULÉ")).isEqualTo("***");
+        assertThat(regex(ChatModerationService.DEFAULT_WORDS, "ENCULÉ")).isEqualTo("ENCULÉ");
+
+        // expression de plusieurs mots contenant un autre mot : la regex dépendait de l'ordre de la liste
+        List<String> mots = List.of("nique", "nique ta mere");
+        assertThat(ChatModerationService.Automaton.of(mots).sanitize("nique ta mere !")).isEqualTo("*** !");
+        assertThat(regex(mots, "nique ta mere !")).isEqualTo("*** ta mere !");
+
+        // caractères spéciaux de regex pris littéralement
+        assertThat(ChatModerationService.Automaton.of(List.of("c++")).sanitize("du c++ ici")).isEqualTo("du *** ici");
+    }
+
+    @Test
+    void listeVideOuTexteNul() {
+        ChatModerationService.Automaton vide = ChatModerationService.Automaton.of(List.of());
+        assertThat(vide.sanitize("merde")).isEqualTo("merde");
+        assertThat(DEFAULT.sanitize(null)).isNull();
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.model.Utilisateur;
+import org.example.support.PgTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/** Chargement des derniers résultats (requête latérale par jeu) et mise à jour du cache ; Postgres requis. */
+class GameHistoryServiceTest {
+
+    private HikariDataSource ds;
+    private JdbcTemplate jdbc;
+    private GameHistoryWriter writer;
+    private GameHistoryService service;
+
+    @BeforeEach
+    void setUp() {
+        ds = PgTestSupport.dataSource(4);
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("drop table if exists game_history");
+        jdbc.execute("""
+                create table game_history (id bigserial primary key, utilisateur_id bigint not null,
+                    game varchar(80) not null, outcome varchar(512), montant_joue bigint not null,
+                    montant_gagne bigint not null, multiplier integer, created_at timestamp not null)
+                """);
+        jdbc.execute("create index gh_user_game_created_idx on game_history (utilisateur_id, game, created_at, id)");
+        // utilisateur 1 : 3 jeux, 30 parties chacun (une par seconde) ; utilisateur 2 : bruit
+        jdbc.update("""
+                insert into game_history (utilisateur_id, game, outcome, montant_joue, montant_gagne, multiplier, created_at)
+                select u, gm, 'p' || i, i, 0, null, timestamp '2024-01-01' + i * interval '1 second'
+                from generate_series(1, 2) u, unnest(array['SLOTS', 'ROULETTE', 'PILEFACE']) gm, generate_series(1, 30) i
+                """);
+
+        writer = mock(GameHistoryWriter.class);
+        service = new GameHistoryService(100, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "jdbc", jdbc);
+        ReflectionTestUtils.setField(service, "writer", writer);
+        ReflectionTestUtils.setField(service, "stats", mock(GameStatsService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ds != null) ds.close();
+    }
+
+    private static Utilisateur user(long id) {
+        Utilisateur u = new Utilisateur();
+        u.setId(id);
+        return u;
+    }
+
+    @Test
+    void chargeLesDixDernieresPartiesDeChaqueJeu() {
+        List<GameHistoryService.HistoryRecord> slots = service.recentForUserByGame(user(1), "SLOTS", 50);
+        assertThat(slots).extracting(r -> r.outcome)
+                .containsExactly("p30", "p29", "p28", "p27", "p26", "p25", "p24", "p23", "p22", "p21");
+        verify(writer).ecrireEnAttente(1L);
+
+        List<GameHistoryService.HistoryRecord> all = service.recentForUser(user(1), 50);
+        assertThat(all).hasSize(30);
+        assertThat(all).extracting(r -> r.game).containsOnly("SLOTS", "ROULETTE", "PILEFACE");
+        assertThat(all.get(0).outcome).isEqualTo("p30");
+    }
+
+    @Test
+    void unPariNeChargeJamaisLUtilisateur() {
+        service.record(1L, "SLOTS", "nouveau", 5, 10, 2);
+        StripedCacheProbe probe = new StripedCacheProbe(service);
+        assertThat(probe.size()).isZero();
+        assertThat(probe.misses()).isZero();
+
+        // chargé par une lecture, puis mis à jour en mémoire par les paris suivants
+        service.recentForUserByGame(user(1), "SLOTS", 1);
+        service.record(1L, "SLOTS", "suivant", 5, 10, 2);
+        assertThat(service.recentForUserByGame(user(1), "SLOTS", 1)).extracting(r -> r.outcome).containsExactly("suivant");
+        assertThat(probe.size()).isEqualTo(1);
+    }
+
+    @Test
+    void requeteParcourtLIndex() {
+        jdbc.execute("analyze game_history");
+        String sql = (String) ReflectionTestUtils.getField(GameHistoryService.class, "RECENT_SQL");
+        // table minuscule : sans seqscan, on vérifie seulement que le plan sait passer par l'index
+        String plan = jdbc.execute((java.sql.Connection c) -> {
+            try (var st = c.createStatement()) {
+                st.execute("set enable_seqscan = off");
+            }
+            try (var ps = c.prepareStatement("explain " + sql)) {
+                ps.setLong(1, 1L);
+                ps.setLong(2, 1L);
+                ps.setLong(3, 1L);
+                ps.setInt(4, 10);
+                StringBuilder sb = new StringBuilder();
+                try (var rs = ps.executeQuery()) {
+                    while (rs.next()) sb.append(rs.getString(1)).append('\n');
+                }
+                return sb.toString();
+            } finally {
+                try (var st = c.createStatement()) {
+                    st.execute("reset enable_seqscan");
+                }
+            }
+        });
+        assertThat(plan).contains("gh_user_game_created_idx").doesNotContain("WindowAgg");
+    }
+
+    /** Accès aux compteurs du cache interne. */
+    private record StripedCacheProbe(GameHistoryService service) {
+        private org.example.service.util.StripedLruCache<?, ?> cache() {
+            return (org.example.service.util.StripedLruCache<?, ?>) ReflectionTestUtils.getField(service, "cache");
+        }
+        long size() { return cache().size(); }
+        long misses() { return cache().missCount(); }
+    }
+}
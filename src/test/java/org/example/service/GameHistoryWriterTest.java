@@ -0,0 +1,64 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GameHistoryWriterTest {
+
+    @Test
+    void ecritureDirecteEnEchecNeLevePasEtRemetLaLigneEnAttente() {
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenThrow(new CannotGetJdbcConnectionException("base indisponible"));
+        // capacité 1 et thread non démarré : la deuxième ligne passe par l'écriture directe
+        GameHistoryWriter writer = new GameHistoryWriter(mock(JdbcTemplate.class), txManager, 1, 5, new SimpleMeterRegistry());
+
+        writer.append(1L, "SLOTS", "WIN", 10, 20, 2, 0L);
+        assertThatCode(() -> writer.append(2L, "SLOTS", "LOSE", 10, 0, null, 0L)).doesNotThrowAnyException();
+
+        List<?> retry = (List<?>) ReflectionTestUtils.getField(writer, "retry");
+        assertThat(retry).hasSize(1);
+        assertThat(((GameHistoryWriter.Row) retry.get(0)).userId()).isEqualTo(2L);
+    }
+
+    @Test
+    void ecrireEnAttenteAttendLeLotDejaSortiDeLaFile() throws Exception {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        // fenêtre de regroupement longue : la ligne reste dans le lot local du thread d'écriture
+        GameHistoryWriter writer = new GameHistoryWriter(jdbc, mock(PlatformTransactionManager.class), 100, 2_000, new SimpleMeterRegistry());
+        writer.start();
+        try {
+            writer.append(1L, "SLOTS", "WIN", 10, 20, 2, 0L);
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (!((java.util.Collection<?>) ReflectionTestUtils.getField(writer, "queue")).isEmpty()) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                Thread.sleep(5);
+            }
+
+            long t0 = System.nanoTime();
+            writer.ecrireEnAttente(1L);
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+
+            // la ligne en vol est écrite avant le retour, sans attendre la fin de la fenêtre de 2 s
+            verify(jdbc, times(1)).update(anyString(), any(PreparedStatementSetter.class));
+            assertThat(ms).isLessThan(1_000);
+        } finally {
+            writer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.service;
+
+import org.example.model.GameStats;
+import org.example.repo.GameStatsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GameStatsServiceTest {
+
+    private final GameStatsRepository repo = mock(GameStatsRepository.class);
+    private final GameStatsService service = new GameStatsService();
+
+    GameStatsServiceTest() {
+        ReflectionTestUtils.setField(service, "statsRepo", repo);
+    }
+
+    @Test
+    void chargementEnEchecApresCommitNeLevePas() {
+        when(repo.findByUtilisateurId(1L)).thenThrow(new DataAccessResourceFailureException("base indisponible"));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.record(1L, "SLOTS", 10, 0);
+            assertThatCode(() -> TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(TransactionSynchronization::afterCommit)).doesNotThrowAnyException();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void premierPariPartDesStatistiquesEnBase() {
+        GameStats s = new GameStats();
+        s.setGame("SLOTS");
+        s.setParties(3);
+        s.setTotalJoue(30);
+        s.setTotalGagne(50);
+        s.setPlusGrosGain(40);
+        s.setSerie(2);
+        when(repo.findByUtilisateurId(1L)).thenReturn(List.of(s));
+
+        service.record(1L, "SLOTS", 10, 30);
+        service.record(1L, "ROULETTE", 5, 0);
+
+        List<GameStatsService.Stats> stats = service.statsFor(1L);
+        assertThat(stats).extracting(GameStatsService.Stats::game).containsExactly("ROULETTE", "SLOTS");
+        GameStatsService.Stats slots = stats.get(1);
+        assertThat(slots.parties()).isEqualTo(4);
+        assertThat(slots.totalJoue()).isEqualTo(40);
+        assertThat(slots.totalGagne()).isEqualTo(80);
+        assertThat(slots.serie()).isEqualTo(3);
+    }
+
+    @Test
+    void pariDUnUtilisateurSupprimeIgnore() {
+        when(repo.findByUtilisateurId(2L)).thenReturn(List.of());
+        service.supprimer(2L);
+        service.record(2L, "SLOTS", 10, 0);
+        assertThat(service.statsFor(2L)).isEmpty();
+    }
+}
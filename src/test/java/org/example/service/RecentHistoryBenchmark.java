@@ -0,0 +1,102 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.model.Utilisateur;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * recentForUser : fusion k-voies des buffers par jeu contre l'ancienne version
+ * (tri de chaque jeu, HistoryRecord et date ISO pour chaque ligne, puis tri global sur la chaîne ISO).
+ * Lancement : main ci-dessous (cf. ChatModerationBenchmark pour le classpath).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecentHistoryBenchmark {
+
+    @Param({"3", "8"})
+    int games;
+
+    @Param({"15"})
+    int limit;
+
+    private GameHistoryService service;
+    private Utilisateur user;
+    private final Map<String, List<GameHistoryService.Entry>> legacy = new LinkedHashMap<>();
+
+    @Setup
+    public void setUp() {
+        service = new GameHistoryService(100, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "jdbc", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(service, "writer", mock(GameHistoryWriter.class));
+        ReflectionTestUtils.setField(service, "stats", mock(GameStatsService.class));
+        user = new Utilisateur();
+        user.setId(1L);
+        service.recentForUser(user, 1); // met l'utilisateur (vide) en cache
+        for (int i = 0; i < 10; i++) {
+            for (int g = 0; g < games; g++) service.record(1L, "JEU" + g, "WIN", 10, 20 + i, 2);
+        }
+        // mêmes lignes pour l'ancienne version
+        for (int g = 0; g < games; g++) {
+            List<GameHistoryService.Entry> entries = new ArrayList<>();
+            for (GameHistoryService.HistoryRecord r : service.recentForUserByGame(user, "JEU" + g, 10)) {
+                GameHistoryService.Entry e = new GameHistoryService.Entry();
+                e.createdAt = Instant.parse(r.createdAt).toEpochMilli();
+                e.id = e.createdAt;
+                e.montantJoue = r.montantJoue;
+                e.montantGagne = r.montantGagne;
+                e.multiplier = r.multiplier;
+                e.outcome = r.outcome;
+                entries.add(e);
+            }
+            legacy.put("JEU" + g, entries);
+        }
+    }
+
+    @Benchmark
+    public List<GameHistoryService.HistoryRecord> fusion() {
+        return service.recentForUser(user, limit);
+    }
+
+    @Benchmark
+    public List<GameHistoryService.HistoryRecord> ancienTri() {
+        List<GameHistoryService.HistoryRecord> all = new ArrayList<>();
+        for (Map.Entry<String, List<GameHistoryService.Entry>> kv : legacy.entrySet()) {
+            String game = kv.getKey();
+            List<GameHistoryService.Entry> list = new ArrayList<>(kv.getValue()); // copie de l'ancien snapshot()
+            list.stream()
+                    .sorted(Comparator.comparingLong((GameHistoryService.Entry e) -> e.createdAt).reversed())
+                    .limit(limit)
+                    .forEach(e -> all.add(new GameHistoryService.HistoryRecord(e.id, game, e.outcome,
+                            e.montantJoue, e.montantGagne, e.multiplier,
+                            Instant.ofEpochMilli(e.createdAt).atOffset(ZoneOffset.UTC).toString())));
+        }
+        return all.stream()
+                .sorted(Comparator.comparing((GameHistoryService.HistoryRecord r) -> r.createdAt).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RecentHistoryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
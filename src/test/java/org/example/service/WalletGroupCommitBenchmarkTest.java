@@ -0,0 +1,113 @@
+package org.example.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.support.PgTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Débits concurrents : un commit par statement (chemin par défaut) contre le commit groupé.
+ * Vérifie que les deux chemins journalisent chaque mutation, et affiche mutations/s et commits/s.
+ * Postgres requis (cf. PgTestSupport) ; -Dbench.ops=... pour allonger la mesure.
+ */
+class WalletGroupCommitBenchmarkTest {
+
+    private static final int USERS = 1_000;
+    private static final int THREADS = 64;
+    private static final int OPS = Integer.getInteger("bench.ops", 20_000);
+
+    private HikariDataSource ds;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ds = PgTestSupport.dataSource(THREADS / 2);
+        PgTestSupport.createWalletSchema(ds);
+        jdbc = new JdbcTemplate(ds);
+        jdbc.update("insert into utilisateur (id, email) select g, 'u' || g || '@test' from generate_series(1, ?) g", USERS);
+        jdbc.update("insert into wallet (utilisateur_id, solde, version) select id, 1000000000, 1 from utilisateur");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ds != null) ds.close();
+    }
+
+    @Test
+    void commitGroupeContreCommitParStatement() throws Exception {
+        double perStatement = run("par statement", userId ->
+                jdbc.update(WalletGroupCommitter.CONDITIONAL_UPDATE_SQL, -1L, userId, 1L, -1L, "DEBIT"));
+        long ledgerApresPremier = count();
+        assertThat(ledgerApresPremier).isEqualTo(OPS);
+
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        WalletGroupCommitter group = new WalletGroupCommitter();
+        ReflectionTestUtils.setField(group, "enabled", true);
+        ReflectionTestUtils.setField(group, "windowMicros", 200L);
+        ReflectionTestUtils.setField(group, "maxBatch", 256);
+        ReflectionTestUtils.setField(group, "timeoutMs", 5_000L);
+        ReflectionTestUtils.setField(group, "dataSource", ds);
+        ReflectionTestUtils.setField(group, "meters", meters);
+        group.start();
+        double grouped;
+        try {
+            grouped = run("commit groupé", userId -> group.submit(userId, -1L, 1L, "DEBIT"));
+        } finally {
+            group.stop();
+        }
+        double commits = meters.counter("wallet.groupcommit.commits").count();
+        System.out.printf("[bench] commit groupé : %.0f commits pour %d mutations (%.1f mutations/commit)%n",
+                commits, OPS, OPS / commits);
+        System.out.printf("[bench] débit : x%.2f%n", grouped / perStatement);
+
+        assertThat(count()).isEqualTo(2L * OPS);
+        Long total = jdbc.queryForObject("select sum(solde) from wallet", Long.class);
+        assertThat(total).isEqualTo(USERS * 1_000_000_000L - 2L * OPS);
+        assertThat(commits).isLessThan(OPS);
+    }
+
+    private long count() {
+        return jdbc.queryForObject("select count(*) from wallet_ledger", Long.class);
+    }
+
+    private double run(String label, java.util.function.LongConsumer op) throws Exception {
+        AtomicLong next = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = java.util.Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < THREADS; t++) {
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    while (next.getAndIncrement() < OPS) {
+                        op.accept(1 + ThreadLocalRandom.current().nextInt(USERS));
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+            th.start();
+            threads.add(th);
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread th : threads) th.join();
+        double secs = (System.nanoTime() - t0) / 1e9;
+        assertThat(errors).isEmpty();
+        double rate = OPS / secs;
+        System.out.printf("[bench] %s : %d mutations en %.2f s, %.0f mutations/s%n", label, OPS, secs, rate);
+        return rate;
+    }
+}
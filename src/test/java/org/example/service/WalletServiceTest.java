@@ -0,0 +1,39 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.repo.WalletRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WalletServiceTest {
+
+    private final WalletRepository repo = mock(WalletRepository.class);
+    private final WalletService service = new WalletService(16, new SimpleMeterRegistry());
+
+    WalletServiceTest() {
+        ReflectionTestUtils.setField(service, "walletRepo", repo);
+    }
+
+    @Test
+    void transfertVersUnDestinataireSansWallet() {
+        when(repo.transfer(1L, 2L, 50L)).thenReturn(List.of());
+        when(repo.findSoldeByUtilisateurId(2L)).thenReturn(Optional.empty());
+
+        assertThat(service.transferer(1L, 2L, 50L)).isEqualTo(WalletService.Transfert.DESTINATAIRE_ABSENT);
+    }
+
+    @Test
+    void transfertAvecSoldeInsuffisant() {
+        when(repo.transfer(1L, 2L, 50L)).thenReturn(List.of());
+        when(repo.findSoldeByUtilisateurId(2L)).thenReturn(Optional.of(mock(WalletRepository.SoldeView.class)));
+
+        assertThat(service.transferer(1L, 2L, 50L)).isEqualTo(WalletService.Transfert.SOLDE_INSUFFISANT);
+    }
+}
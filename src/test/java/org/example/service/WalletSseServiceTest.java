@@ -0,0 +1,183 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.service.bus.LocalNotificationBus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.FakeSseConnection;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Registre SSE en shards et roue de heartbeat : répartition, cadence des pings, nettoyage.
+ * La roue est arrêtée et avancée à la main (tick), pour ne pas dépendre de l'horloge.
+ */
+class WalletSseServiceTest {
+
+    private static final int N = 1_600;
+    private static final int SHARDS = 16;
+    private static final int WHEEL_TICKS = 15;
+
+    private SimpleMeterRegistry meters;
+    private WalletSseService service;
+    private final List<String> emails = new ArrayList<>();
+    private final List<FakeSseConnection> connections = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meters = new SimpleMeterRegistry();
+        service = new WalletSseService(50, 100_000, 4, new LocalNotificationBus(), mock(WalletStompService.class), meters);
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(service, "wheel")).shutdownNow();
+        ReflectionTestUtils.setField(service, "tick", new AtomicInteger());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private void registerAll() {
+        for (int i = 0; i < N; i++) {
+            String email = "joueur" + i + "@test";
+            emails.add(email);
+            SseEmitter emitter = service.register(email);
+            connections.add(FakeSseConnection.attach(emitter));
+        }
+    }
+
+    private double connectionsOfShard(int shard) {
+        return meters.get("wallet.sse.connections").tag("shard", Integer.toString(shard)).gauge().value();
+    }
+
+    private double totalConnections() {
+        double total = 0;
+        for (int s = 0; s < SHARDS; s++) total += connectionsOfShard(s);
+        return total;
+    }
+
+    private static int slotOf(String email) {
+        return ((email.hashCode() & 0x7fffffff) / SHARDS) % WHEEL_TICKS;
+    }
+
+    private long pings() {
+        return connections.stream().mapToLong(c -> c.count("ping")).sum();
+    }
+
+    @Test
+    void repartitEquitablementLesFluxEntreLesShards() {
+        registerAll();
+        assertThat(totalConnections()).isEqualTo(N);
+        for (int s = 0; s < SHARDS; s++) {
+            assertThat(connectionsOfShard(s)).as("shard %d", s).isBetween(N / SHARDS * 0.5, N / SHARDS * 1.5);
+        }
+        assertThat(connections).allMatch(c -> c.count("connected") == 1);
+    }
+
+    @Test
+    void chaqueFluxRecoitUnPingParTourDeRoueDansSonCran() throws Exception {
+        registerAll();
+        long pire = 0;
+        for (int t = 0; t < WHEEL_TICKS; t++) {
+            long avant = pings();
+            int slot = t;
+            long dansLeCran = emails.stream().filter(e -> slotOf(e) == slot).count();
+            ReflectionTestUtils.invokeMethod(service, "tick");
+            waitUntil(() -> pings() == avant + dansLeCran);
+            // un cran ne réveille qu'environ 1/15e des flux, et seulement ceux de ce cran
+            assertThat(dansLeCran).isBetween((long) (N / WHEEL_TICKS * 0.5), (long) (N / WHEEL_TICKS * 1.5));
+            pire = Math.max(pire, dansLeCran);
+            for (int i = 0; i < N; i++) {
+                assertThat(connections.get(i).count("ping")).isEqualTo(slotOf(emails.get(i)) <= slot ? 1 : 0);
+            }
+        }
+        // un tour complet : exactement un ping par flux
+        assertThat(connections).allMatch(c -> c.count("ping") == 1);
+        // ancien heartbeat : les N flux en une seule passe toutes les 15 s
+        System.out.printf("[sse] %d flux : au plus %d pings par seconde (contre %d d'un coup avant)%n", N, pire, N);
+    }
+
+    @Test
+    void retireLesFluxTerminesExpiresOuCoupes() throws Exception {
+        registerAll();
+        connections.get(0).fireCompletion();
+        connections.get(1).fireTimeout();
+        assertThat(service.isConnected(emails.get(0))).isFalse();
+        assertThat(service.isConnected(emails.get(1))).isFalse();
+        assertThat(totalConnections()).isEqualTo(N - 2);
+
+        // client parti sans prévenir : détecté au heartbeat de son cran, retiré en fin de passe
+        FakeSseConnection coupe = connections.get(2);
+        coupe.breakConnection();
+        int slot = slotOf(emails.get(2));
+        ReflectionTestUtils.setField(service, "tick", new AtomicInteger(slot));
+        ReflectionTestUtils.invokeMethod(service, "tick");
+        waitUntil(() -> !service.isConnected(emails.get(2)));
+        assertThat(totalConnections()).isEqualTo(N - 3);
+        assertThat(meters.counter("wallet.sse.reaped").count()).isEqualTo(3);
+    }
+
+    @Test
+    void leNombreDeThreadsNeDependPasDuNombreDeFlux() {
+        long avant = sseThreads();
+        registerAll();
+        for (int t = 0; t < WHEEL_TICKS; t++) ReflectionTestUtils.invokeMethod(service, "tick");
+        // roue + flush + pool de heartbeat (4) : fixe, que le nœud tienne 0 ou N flux
+        long apres = sseThreads();
+        System.out.printf("[sse] threads wallet-sse : %d sans flux, %d pour %d flux%n", avant, apres, N);
+        assertThat(apres).isLessThanOrEqualTo(Math.max(avant, 2 + 4));
+    }
+
+    @Test
+    void instantaneLuHorsDuVerrouDuTampon() {
+        String email = "reprise@test";
+        boolean[] verrouTenu = {true};
+        SseEmitter emitter = service.register(email, "1", () -> {
+            Object ring = ((java.util.Map<?, ?>) ReflectionTestUtils.getField(service, "rings")).get(email);
+            verrouTenu[0] = Thread.holdsLock(ring);
+            return 42L;
+        });
+        FakeSseConnection c = FakeSseConnection.attach(emitter);
+        assertThat(verrouTenu[0]).isFalse();
+        assertThat(c.count("wallet-update")).isEqualTo(1);
+        assertThat(c.events()).anyMatch(e -> e.contains("solde=42"));
+    }
+
+    @Test
+    void instantanePerimeSiLeTamponABougePendantLaLecture() {
+        String email = "course@test";
+        int[] lectures = {0};
+        // une mise à jour arrive pendant la lecture de l'instantané : c'est elle qui doit être envoyée
+        SseEmitter emitter = service.register(email, "1", () -> {
+            lectures[0]++;
+            service.sendBalanceUpdate(email, 999L);
+            return 5L;
+        });
+        FakeSseConnection c = FakeSseConnection.attach(emitter);
+        assertThat(lectures[0]).isEqualTo(1);
+        assertThat(c.count("wallet-update")).isEqualTo(1);
+        assertThat(c.events()).anyMatch(e -> e.contains("solde=999")).noneMatch(e -> e.contains("solde=5"));
+    }
+
+    private static long sseThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().startsWith("wallet-sse-")).count();
+    }
+
+    private static void waitUntil(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!cond.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("délai dépassé").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.service.bus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.support.PgTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Deux nœuds sur la même base : livraison locale, relais NOTIFY, découpage des lots, reconnexion. Postgres requis. */
+class PgNotificationBusTest {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    private HikariDataSource ds;
+    private SimpleMeterRegistry metersA;
+    private PgNotificationBus a;
+    private PgNotificationBus b;
+    private final List<String> recusA = new CopyOnWriteArrayList<>();
+    private final List<String> recusB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ds = PgTestSupport.dataSource(8);
+        metersA = new SimpleMeterRegistry();
+        // fenêtre de 50 ms : une rafale part en quelques NOTIFY
+        a = new PgNotificationBus(ds, new ObjectMapper(), 50, metersA);
+        b = new PgNotificationBus(ds, new ObjectMapper(), 50, new SimpleMeterRegistry());
+        a.subscribe(NotificationBus.CHAT, String.class, recusA::add);
+        b.subscribe(NotificationBus.CHAT, String.class, recusB::add);
+        a.start();
+        b.start();
+        waitUntil(() -> listeners() >= 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (a != null) a.stop();
+        if (b != null) b.stop();
+        if (ds != null) ds.close();
+    }
+
+    @Test
+    void livreLocalementPuisAuxAutresNoeuds() throws Exception {
+        a.publish(NotificationBus.CHAT, "bonjour");
+        // livraison locale synchrone, avant tout NOTIFY
+        assertThat(recusA).containsExactly("bonjour");
+
+        waitUntil(() -> recusB.size() == 1);
+        assertThat(recusB).containsExactly("bonjour");
+        // le NOTIFY de A lui revient aussi, il est ignoré
+        Thread.sleep(300);
+        assertThat(recusA).containsExactly("bonjour");
+    }
+
+    @Test
+    void decoupeLesRafalesEnNotifyDeMoinsDe8000Octets() throws Exception {
+        List<Integer> tailles = new CopyOnWriteArrayList<>();
+        try (Connection raw = DriverManager.getConnection(PgTestSupport.jdbcUrl(),
+                System.getProperty("test.pg.user", ds.getUsername()), System.getProperty("test.pg.password", ds.getPassword()))) {
+            try (Statement st = raw.createStatement()) {
+                st.execute("LISTEN casino_bus");
+            }
+            List<String> envoyes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String msg = i + ":" + "é".repeat(500); // 1000+ octets UTF-8 pour 500 caractères
+                envoyes.add(msg);
+                a.publish(NotificationBus.CHAT, msg);
+            }
+            waitUntil(() -> recusB.size() == envoyes.size());
+            assertThat(recusB).containsExactlyElementsOf(envoyes);
+
+            PGConnection pg = raw.unwrap(PGConnection.class);
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (System.currentTimeMillis() < deadline) {
+                PGNotification[] ns = pg.getNotifications(200);
+                if (ns == null) continue;
+                for (PGNotification n : ns) tailles.add(n.getParameter().getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+        // 40 x ~1 Ko : au moins 6 NOTIFY, chacun sous la limite de Postgres (8000 octets)
+        assertThat(tailles.size()).isGreaterThanOrEqualTo(6);
+        assertThat(tailles).allMatch(t -> t <= 7900);
+        assertThat(metersA.summary("bus.notify.batch.size").max()).isGreaterThan(1);
+    }
+
+    @Test
+    void messageTropGrosLivreLocalementSeulement() throws Exception {
+        String gros = "x".repeat(8_000);
+        a.publish(NotificationBus.CHAT, gros);
+        a.publish(NotificationBus.CHAT, "petit");
+        assertThat(recusA).containsExactly(gros, "petit");
+        waitUntil(() -> recusB.contains("petit"));
+        assertThat(recusB).containsExactly("petit");
+        assertThat(metersA.counter("bus.dropped", "type", "postgres").count()).isEqualTo(1);
+    }
+
+    @Test
+    void reprendApresPerteDesConnexions() throws Exception {
+        a.publish(NotificationBus.CHAT, "avant");
+        waitUntil(() -> recusB.size() == 1);
+
+        // coupe côté serveur les connexions d'écoute et d'envoi des deux nœuds
+        new JdbcTemplate(ds).queryForList("""
+                select pg_terminate_backend(pid) from pg_stat_activity
+                where pid <> pg_backend_pid() and (query like 'LISTEN%' or query like 'select pg_notify%')
+                """);
+        waitUntil(() -> listeners() >= 2);
+
+        // le premier envoi peut se perdre avec la connexion coupée (best effort) : on insiste
+        int[] n = {0};
+        waitUntil(() -> {
+            a.publish(NotificationBus.CHAT, "apres-" + n[0]++);
+            sleep(200);
+            return recusB.stream().anyMatch(s -> s.startsWith("apres-"));
+        });
+    }
+
+    private int listeners() {
+        Integer n = new JdbcTemplate(ds).queryForObject(
+                "select count(*) from pg_stat_activity where query like 'LISTEN casino_bus%' and pid <> pg_backend_pid()",
+                Integer.class);
+        return n == null ? 0 : n;
+    }
+
+    private static void waitUntil(BooleanSupplier cond) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!cond.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("délai dépassé").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
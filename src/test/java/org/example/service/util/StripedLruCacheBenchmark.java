@@ -0,0 +1,51 @@
+package org.example.service.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectures concurrentes (8 threads, 90 % de lectures) : un seul segment, soit un LRU sous verrou global,
+ * contre 64 segments (réglage de WalletService et GameHistoryService).
+ * Lancement : main ci-dessous, ou java -cp ... org.example.service.util.StripedLruCacheBenchmark
+ * (cf. ChatModerationBenchmark pour le classpath).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class StripedLruCacheBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    @Param({"1", "64"})
+    int stripes;
+
+    private StripedLruCache<Long, Long> cache;
+
+    @Setup
+    public void setUp() {
+        cache = new StripedLruCache<>(KEYS, stripes);
+        for (long k = 0; k < KEYS; k++) cache.put(k, k);
+    }
+
+    @Benchmark
+    public Long lectureEcriture() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long key = rnd.nextInt(KEYS);
+        if (rnd.nextInt(10) == 0) {
+            return cache.update(key, v -> v == null ? key : v + 1);
+        }
+        return cache.get(key);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(StripedLruCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
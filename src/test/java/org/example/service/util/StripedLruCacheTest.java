@@ -0,0 +1,129 @@
+package org.example.service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLruCacheTest {
+
+    @Test
+    void evinceLeMoinsRecemmentUtiliseDuSegment() {
+        StripedLruCache<Integer, String> cache = new StripedLruCache<>(3, 1);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        cache.get(1);          // 1 redevient le plus récent
+        cache.put(4, "d");     // 2 sort
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(1)).isEqualTo("a");
+        assertThat(cache.get(3)).isEqualTo("c");
+        assertThat(cache.get(4)).isEqualTo("d");
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void chaqueSegmentGereSaPropreCapacite() {
+        // 2 segments de 2 : un Integer petit tombe dans le segment (valeur & 1)
+        StripedLruCache<Integer, String> cache = new StripedLruCache<>(4, 2);
+        cache.put(0, "pair0");
+        cache.put(1, "impair1");
+        cache.put(2, "pair2");
+        cache.put(3, "impair3");
+        cache.get(0);
+        cache.put(4, "pair4"); // segment pair plein : 2 sort, le segment impair n'est pas touché
+        assertThat(cache.get(2)).isNull();
+        assertThat(cache.get(0)).isEqualTo("pair0");
+        assertThat(cache.get(1)).isEqualTo("impair1");
+        assertThat(cache.get(3)).isEqualTo("impair3");
+        assertThat(cache.size()).isEqualTo(4);
+    }
+
+    @Test
+    void updateRenvoyantNullSupprimeOuNAjouteRien() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(10, 4);
+        cache.put("a", 1);
+        assertThat(cache.update("a", v -> v + 1)).isEqualTo(2);
+        assertThat(cache.update("a", v -> null)).isNull();
+        assertThat(cache.get("a")).isNull();
+
+        assertThat(cache.update("absent", v -> null)).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.update("nouveau", v -> v == null ? 7 : v)).isEqualTo(7);
+        assertThat(cache.getIfPresent("nouveau")).isEqualTo(7);
+    }
+
+    @Test
+    void chargeurRenvoyantNullNeMetRienEnCache() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(10, 4);
+        assertThat(cache.get("a", k -> null)).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("b", k -> 5)).isEqualTo(5);
+        assertThat(cache.get("b", k -> 6)).isEqualTo(5);
+    }
+
+    @Test
+    void getIfPresentNeCompteNiHitNiMiss() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(10, 4);
+        cache.put("a", 1);
+        cache.getIfPresent("a");
+        cache.getIfPresent("b");
+        assertThat(cache.hitCount()).isZero();
+        assertThat(cache.missCount()).isZero();
+        assertThat(cache.hitRatio()).isZero();
+    }
+
+    @Test
+    void compteursExactsSousConcurrence() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+
+        // clés 0..99 présentes, 100..199 absentes : autant de hits que de misses
+        StripedLruCache<Integer, Integer> cache = new StripedLruCache<>(1_000, 16);
+        for (int k = 0; k < 100; k++) cache.put(k, k);
+        runConcurrently(threads, t -> {
+            for (int i = 0; i < perThread; i++) cache.get(i % 200);
+        });
+        assertThat(cache.hitCount()).isEqualTo(threads * perThread / 2);
+        assertThat(cache.missCount()).isEqualTo(threads * perThread / 2);
+        assertThat(cache.hitRatio()).isEqualTo(0.5);
+
+        // insertions toutes distinctes : chaque insertion au-delà de la capacité évince exactement une entrée
+        StripedLruCache<Integer, Integer> bounded = new StripedLruCache<>(1_000, 16);
+        runConcurrently(threads, t -> {
+            for (int i = 0; i < perThread; i++) bounded.put(t * perThread + i, i);
+        });
+        assertThat(bounded.size()).isLessThanOrEqualTo(1_000);
+        assertThat(bounded.evictionCount()).isEqualTo(threads * perThread - bounded.size());
+    }
+
+    private interface Work {
+        void run(int thread);
+    }
+
+    private static void runConcurrently(int threads, Work work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> list = new ArrayList<>();
+        AtomicInteger errors = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    work.run(id);
+                } catch (Throwable e) {
+                    errors.incrementAndGet();
+                }
+            });
+            th.start();
+            list.add(th);
+        }
+        start.countDown();
+        for (Thread th : list) th.join();
+        assertThat(errors).hasValue(0);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.support;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Assumptions;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Postgres pour les tests d'intégration :
+ * -Dtest.pg.url=jdbc:postgresql://... (+ test.pg.user / test.pg.password) pour une base existante,
+ * sinon un conteneur Testcontainers partagé ; sans l'un ni l'autre, le test est ignoré.
+ */
+public final class PgTestSupport {
+
+    private static PostgreSQLContainer<?> container;
+
+    private PgTestSupport() {}
+
+    public static synchronized HikariDataSource dataSource(int poolSize) {
+        HikariConfig cfg = new HikariConfig();
+        String url = System.getProperty("test.pg.url");
+        if (url != null) {
+            cfg.setJdbcUrl(url);
+            cfg.setUsername(System.getProperty("test.pg.user", "postgres"));
+            cfg.setPassword(System.getProperty("test.pg.password", ""));
+        } else {
+            Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(),
+                    "ni -Dtest.pg.url ni Docker : test Postgres ignoré");
+            if (container == null) {
+                container = new PostgreSQLContainer<>("postgres:15-alpine");
+                container.start();
+            }
+            cfg.setJdbcUrl(container.getJdbcUrl());
+            cfg.setUsername(container.getUsername());
+            cfg.setPassword(container.getPassword());
+        }
+        cfg.setMaximumPoolSize(poolSize);
+        return new HikariDataSource(cfg);
+    }
+
+    /** Url JDBC de la base de test (connexions hors pool, ex. LISTEN). */
+    public static synchronized String jdbcUrl() {
+        String url = System.getProperty("test.pg.url");
+        return url != null ? url : container.getJdbcUrl();
+    }
+
+    /** Tables wallet minimales (colonnes utilisées par les requêtes natives). */
+    public static void createWalletSchema(javax.sql.DataSource ds) throws java.sql.SQLException {
+        try (var c = ds.getConnection(); var st = c.createStatement()) {
+            st.execute("drop table if exists wallet_ledger, wallet, utilisateur cascade");
+            st.execute("create table utilisateur (id bigint primary key, email varchar(255) not null)");
+            st.execute("create table wallet (utilisateur_id bigint primary key references utilisateur(id),"
+                    + " solde bigint not null, version bigint not null)");
+            st.execute("create table wallet_ledger (id bigserial primary key, utilisateur_id bigint not null,"
+                    + " version bigint not null, delta bigint not null, solde_apres bigint not null,"
+                    + " type varchar(16) not null, created_at timestamp not null)");
+        }
+    }
+}
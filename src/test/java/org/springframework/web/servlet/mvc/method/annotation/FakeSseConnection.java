@@ -0,0 +1,95 @@
+package org.springframework.web.servlet.mvc.method.annotation;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Connexion HTTP simulée pour un SseEmitter (même paquet que Spring : initialize est package-private).
+ * Garde les événements écrits, et permet de déclencher timeout / fin / coupure réseau.
+ */
+public final class FakeSseConnection implements ResponseBodyEmitter.Handler {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final StringBuilder current = new StringBuilder();
+    private volatile boolean broken;
+    private Runnable timeoutCallback;
+    private Runnable completionCallback;
+
+    private FakeSseConnection() {}
+
+    public static FakeSseConnection attach(SseEmitter emitter) {
+        FakeSseConnection c = new FakeSseConnection();
+        try {
+            emitter.initialize(c);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return c;
+    }
+
+    /** Événements reçus, au format texte SSE ("event:ping\ndata:keepalive"...). */
+    public List<String> events() {
+        return events;
+    }
+
+    public long count(String eventName) {
+        return events.stream().filter(e -> e.contains("event:" + eventName + "\n")).count();
+    }
+
+    /** Les écritures suivantes échouent (client parti). */
+    public void breakConnection() {
+        broken = true;
+    }
+
+    public void fireTimeout() {
+        timeoutCallback.run();
+    }
+
+    public void fireCompletion() {
+        completionCallback.run();
+    }
+
+    @Override
+    public synchronized void send(Object data, MediaType mediaType) throws IOException {
+        if (broken) throw new IOException("connexion fermée");
+        current.append(data);
+        if (current.toString().endsWith("\n\n")) {
+            events.add(current.toString().trim());
+            current.setLength(0);
+        }
+    }
+
+    @Override
+    public synchronized void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+        for (ResponseBodyEmitter.DataWithMediaType item : items) send(item.getData(), item.getMediaType());
+    }
+
+    @Override
+    public void complete() {
+        if (completionCallback != null) completionCallback.run();
+    }
+
+    @Override
+    public void completeWithError(Throwable failure) {
+        complete();
+    }
+
+    @Override
+    public void onTimeout(Runnable callback) {
+        this.timeoutCallback = callback;
+    }
+
+    @Override
+    public void onError(Consumer<Throwable> callback) {
+    }
+
+    @Override
+    public void onCompletion(Runnable callback) {
+        this.completionCallback = callback;
+    }
+}